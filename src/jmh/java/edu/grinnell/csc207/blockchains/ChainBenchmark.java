@@ -0,0 +1,205 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of operations on whole chains of several sizes. The chains
+ * alternate deposits with transfers among a hundred users, so they stay
+ * correct.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class ChainBenchmark {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of users in the chain.
+   */
+  static final int USERS = 100;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks in the chain.
+   */
+  @Param({"1000", "10000", "100000", "1000000"})
+  int size;
+
+  /**
+   * The chain.
+   */
+  BlockChain chain;
+
+  /**
+   * A block that may be appended to the chain.
+   */
+  Block next;
+
+  /**
+   * The next user whose balance we look up.
+   */
+  int user;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the name of a user.
+   *
+   * @param i
+   *   The number of the user.
+   *
+   * @return the name of that user.
+   */
+  static String user(int i) {
+    return "user" + (i % USERS);
+  } // user(int)
+
+  /**
+   * Get the transaction in a block. Odd blocks deposit 2 to a user, and
+   * even blocks move 1 from that user to the next.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the transaction.
+   */
+  static Transaction transaction(int num) {
+    if (num % 2 == 1) {
+      return new Transaction("", user(num / 2), 2);
+    } // if
+    int from = (num - 1) / 2;
+    return new Transaction(user(from), user(from + 1), 1);
+  } // transaction(int)
+
+  /**
+   * Make the block that follows the last block of the chain. Every hash
+   * is valid, so any nonce will do.
+   *
+   * @return the block.
+   */
+  Block following() {
+    int num = this.chain.getSize();
+    return new Block(num, transaction(num), this.chain.getHash(), 0);
+  } // following()
+
+  // +-------+-------------------------------------------------------
+  // | Setup |
+  // +-------+
+
+  /**
+   * Build the chain.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    this.chain = new BlockChain((hash) -> true, new Miner(1));
+    while (this.chain.getSize() < this.size) {
+      this.chain.append(following());
+    } // while
+    this.next = following();
+  } // setup()
+
+  /**
+   * Put back the block removed by removeLast.
+   */
+  @Setup(Level.Invocation)
+  public void restore() {
+    if (this.chain.getSize() < this.size) {
+      this.chain.append(following());
+    } // if
+  } // restore()
+
+  /**
+   * Take away the block added by append.
+   */
+  @TearDown(Level.Invocation)
+  public void trim() {
+    if (this.chain.getSize() > this.size) {
+      this.chain.removeLast();
+    } // if
+  } // trim()
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Append a block to the end of the chain.
+   */
+  @Benchmark
+  public void append() {
+    this.chain.append(this.next);
+  } // append()
+
+  /**
+   * Remove the last block of the chain.
+   *
+   * @return whether the block was removed.
+   */
+  @Benchmark
+  public boolean removeLast() {
+    return this.chain.removeLast();
+  } // removeLast()
+
+  /**
+   * Check the whole chain, re-examining every block. A plain check()
+   * would examine nothing after the first call, since every block would
+   * already have been checked.
+   *
+   * @throws Exception
+   *   If the chain is not correct.
+   */
+  @Benchmark
+  public void check() throws Exception {
+    this.chain.check(true);
+  } // check()
+
+  /**
+   * Append a block and check the chain, which examines only the new
+   * block.
+   *
+   * @throws Exception
+   *   If the chain is not correct.
+   */
+  @Benchmark
+  public void appendCheck() throws Exception {
+    this.chain.append(this.next);
+    this.chain.check();
+  } // appendCheck()
+
+  /**
+   * Look up the balance of one user.
+   *
+   * @return the balance.
+   */
+  @Benchmark
+  public int balance() {
+    return this.chain.balance(user(this.user++));
+  } // balance()
+} // class ChainBenchmark
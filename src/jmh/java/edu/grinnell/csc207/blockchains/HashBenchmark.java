@@ -0,0 +1,108 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of hashing a single block.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashBenchmark {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The length of the user names in the transaction.
+   */
+  @Param({"4", "64"})
+  int nameLength;
+
+  /**
+   * The block to hash.
+   */
+  Block block;
+
+  /**
+   * A hasher primed with the contents of the block.
+   */
+  BlockHasher hasher;
+
+  /**
+   * The next nonce to hash.
+   */
+  long nonce;
+
+  // +-------+-------------------------------------------------------
+  // | Setup |
+  // +-------+
+
+  /**
+   * Build the block.
+   */
+  @Setup
+  public void setup() {
+    Transaction t = new Transaction("s".repeat(this.nameLength),
+        "t".repeat(this.nameLength), 100);
+    this.block = new Block(12345, t, new Hash(new byte[32]), 0);
+    this.hasher = new BlockHasher();
+    this.hasher.prime(12345, t, this.block.getPrevHash());
+  } // setup()
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Compute and store the hash of the block.
+   *
+   * @return the new hash.
+   *
+   * @throws Exception
+   *   If the hash cannot be computed.
+   */
+  @Benchmark
+  public Hash computeHash() throws Exception {
+    this.block.computeHash();
+    return this.block.getHash();
+  } // computeHash()
+
+  /**
+   * Check the stored hash of the block, as append and check do.
+   *
+   * @return whether the hash matches.
+   */
+  @Benchmark
+  public boolean hashMatches() {
+    return this.block.hashMatches();
+  } // hashMatches()
+
+  /**
+   * Hash one mining attempt.
+   *
+   * @return the digest.
+   */
+  @Benchmark
+  public byte[] miningAttempt() {
+    return this.hasher.digest(this.nonce++);
+  } // miningAttempt()
+} // class HashBenchmark
@@ -0,0 +1,108 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of mining one block at several difficulties.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MiningBenchmark {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of leading zero bits a valid hash needs.
+   */
+  @Param({"8", "12", "16"})
+  int difficulty;
+
+  /**
+   * The number of mining threads; 0 means one per processor.
+   */
+  @Param({"1", "0"})
+  int threads;
+
+  /**
+   * The validator for the difficulty.
+   */
+  HashValidator validator;
+
+  /**
+   * The miner.
+   */
+  Miner miner;
+
+  /**
+   * The transaction to mine.
+   */
+  Transaction transaction;
+
+  /**
+   * The previous hash of the block to mine.
+   */
+  Hash prevHash;
+
+  /**
+   * The number of the next block to mine, so that every search differs.
+   */
+  int num;
+
+  // +-------+-------------------------------------------------------
+  // | Setup |
+  // +-------+
+
+  /**
+   * Build the miner and validator.
+   */
+  @Setup
+  public void setup() {
+    int bits = this.difficulty;
+    this.validator = (hash) -> {
+      for (int i = 0; i < bits; i++) {
+        if ((hash.get(i / 8) & (0x80 >>> (i % 8))) != 0) {
+          return false;
+        } // if
+      } // for
+      return true;
+    };
+    this.miner = (this.threads == 0) ? new Miner() : new Miner(this.threads);
+    this.transaction = new Transaction("Alice", "Bob", 10);
+    this.prevHash = new Hash(new byte[32]);
+  } // setup()
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Mine one block.
+   *
+   * @return the block.
+   */
+  @Benchmark
+  public Block mine() {
+    return this.miner.mine(this.num++, this.transaction, this.prevHash,
+        this.validator);
+  } // mine()
+} // class MiningBenchmark
@@ -0,0 +1,324 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+/**
+ * The users ordered by balance, kept up to date as balances change, so
+ * the richest users, the users in a range of balances, or any page of
+ * users in order can be found without sorting. The index is a treap
+ * whose nodes live in parallel arrays and whose keys pack a balance and
+ * a user ID into one long, so nothing is boxed. Each node also counts
+ * the nodes below it, so the user at any rank can be found in
+ * logarithmic time.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class BalanceIndex {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The node that stands for an empty tree.
+   */
+  static final int NIL = 0;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The key of each node: the balance in the high half and the user ID
+   * in the low half.
+   */
+  long[] keys = new long[16];
+
+  /**
+   * The left child of each node, or the next free node.
+   */
+  int[] lefts = new int[16];
+
+  /**
+   * The right child of each node.
+   */
+  int[] rights = new int[16];
+
+  /**
+   * The heap priority of each node.
+   */
+  int[] priorities = new int[16];
+
+  /**
+   * The number of nodes in the tree under each node, including it.
+   */
+  int[] sizes = new int[16];
+
+  /**
+   * The root of the tree.
+   */
+  int root = NIL;
+
+  /**
+   * The first free node, or NIL if every node up to used is taken.
+   */
+  int free = NIL;
+
+  /**
+   * The number of nodes ever handed out, counting NIL.
+   */
+  int used = 1;
+
+  /**
+   * The state of the generator of priorities.
+   */
+  int seed = 0x2545F491;
+
+  /**
+   * The tree of keys below the split key, left by split.
+   */
+  int below;
+
+  /**
+   * The tree of keys at or above the split key, left by split.
+   */
+  int above;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Pack a balance and a user ID into a key. Keys order by balance and
+   * then by ID.
+   *
+   * @param id
+   *   The ID of the user.
+   * @param balance
+   *   The balance.
+   *
+   * @return the key.
+   */
+  static long key(int id, int balance) {
+    return ((long) balance << 32) | id;
+  } // key(int, int)
+
+  /**
+   * Take a node from the free list, or a new one.
+   *
+   * @param key
+   *   The key of the node.
+   *
+   * @return the node.
+   */
+  int allocate(long key) {
+    int node = this.free;
+    if (node != NIL) {
+      this.free = this.lefts[node];
+    } else {
+      if (this.used == this.keys.length) {
+        int length = this.used * 2;
+        this.keys = Arrays.copyOf(this.keys, length);
+        this.lefts = Arrays.copyOf(this.lefts, length);
+        this.rights = Arrays.copyOf(this.rights, length);
+        this.priorities = Arrays.copyOf(this.priorities, length);
+        this.sizes = Arrays.copyOf(this.sizes, length);
+      } // if
+      node = this.used++;
+    } // if-else
+    this.seed ^= this.seed << 13;
+    this.seed ^= this.seed >>> 17;
+    this.seed ^= this.seed << 5;
+    this.keys[node] = key;
+    this.lefts[node] = NIL;
+    this.rights[node] = NIL;
+    this.priorities[node] = this.seed;
+    this.sizes[node] = 1;
+    return node;
+  } // allocate(long)
+
+  /**
+   * Recount the nodes under a node after its children change.
+   *
+   * @param node
+   *   The node.
+   */
+  void pull(int node) {
+    this.sizes[node] = this.sizes[this.lefts[node]] + this.sizes[this.rights[node]] + 1;
+  } // pull(int)
+
+  /**
+   * Split a tree into the keys below a key and the rest, which are left
+   * in below and above.
+   *
+   * @param node
+   *   The root of the tree.
+   * @param key
+   *   The key to split at.
+   */
+  void split(int node, long key) {
+    if (node == NIL) {
+      this.below = NIL;
+      this.above = NIL;
+    } else if (this.keys[node] < key) {
+      split(this.rights[node], key);
+      this.rights[node] = this.below;
+      pull(node);
+      this.below = node;
+    } else {
+      split(this.lefts[node], key);
+      this.lefts[node] = this.above;
+      pull(node);
+      this.above = node;
+    } // if-else
+  } // split(int, long)
+
+  /**
+   * Join two trees, where every key in the first is below every key in
+   * the second.
+   *
+   * @param left
+   *   The root of the first tree.
+   * @param right
+   *   The root of the second tree.
+   *
+   * @return the root of the joined tree.
+   */
+  int merge(int left, int right) {
+    if (left == NIL) {
+      return right;
+    } else if (right == NIL) {
+      return left;
+    } else if (this.priorities[left] > this.priorities[right]) {
+      this.rights[left] = merge(this.rights[left], right);
+      pull(left);
+      return left;
+    } else {
+      this.lefts[right] = merge(left, this.lefts[right]);
+      pull(right);
+      return right;
+    } // if-else
+  } // merge(int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a user.
+   *
+   * @param id
+   *   The ID of the user, who must not be in the index.
+   * @param balance
+   *   The user's balance.
+   */
+  void add(int id, int balance) {
+    long key = key(id, balance);
+    int node = allocate(key);
+    split(this.root, key);
+    int rest = this.above;
+    this.root = merge(merge(this.below, node), rest);
+  } // add(int, int)
+
+  /**
+   * Remove a user.
+   *
+   * @param id
+   *   The ID of the user.
+   * @param balance
+   *   The user's balance, as given when the user was added.
+   */
+  void remove(int id, int balance) {
+    long key = key(id, balance);
+    split(this.root, key);
+    int left = this.below;
+    split(this.above, key + 1);
+    int node = this.below;
+    if (node != NIL) {
+      this.lefts[node] = this.free;
+      this.free = node;
+    } // if
+    this.root = merge(left, this.above);
+  } // remove(int, int)
+
+  /**
+   * Change a user's balance.
+   *
+   * @param id
+   *   The ID of the user.
+   * @param from
+   *   The old balance.
+   * @param to
+   *   The new balance.
+   */
+  void move(int id, int from, int to) {
+    if (from != to) {
+      remove(id, from);
+      add(id, to);
+    } // if
+  } // move(int, int, int)
+
+  /**
+   * Count the users.
+   *
+   * @return the number of users.
+   */
+  int size() {
+    return this.sizes[this.root];
+  } // size()
+
+  /**
+   * Count the users whose balances are below an amount.
+   *
+   * @param balance
+   *   The amount.
+   *
+   * @return the number of those users.
+   */
+  int rank(long balance) {
+    if (balance > Integer.MAX_VALUE) {
+      return size();
+    } // if
+    long key = balance << 32;
+    int count = 0;
+    int node = this.root;
+    while (node != NIL) {
+      if (this.keys[node] < key) {
+        count += this.sizes[this.lefts[node]] + 1;
+        node = this.rights[node];
+      } else {
+        node = this.lefts[node];
+      } // if-else
+    } // while
+    return count;
+  } // rank(long)
+
+  /**
+   * Find the user at a rank.
+   *
+   * @param rank
+   *   The number of users with lower keys, from 0 to size() - 1.
+   *
+   * @return the ID of the user.
+   *
+   * @throws IndexOutOfBoundsException if no user has that rank.
+   */
+  int select(int rank) {
+    if ((rank < 0) || (rank >= size())) {
+      throw new IndexOutOfBoundsException(rank);
+    } // if
+    int remaining = rank;
+    int node = this.root;
+    while (true) {
+      int left = this.sizes[this.lefts[node]];
+      if (remaining < left) {
+        node = this.lefts[node];
+      } else if (remaining == left) {
+        return (int) this.keys[node];
+      } else {
+        remaining -= left + 1;
+        node = this.rights[node];
+      } // if-else
+    } // while
+  } // select(int)
+} // class BalanceIndex
@@ -1,7 +1,6 @@
 package edu.grinnell.csc207.blockchains;
 
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Random;
 
@@ -104,6 +103,29 @@ public class Block {
     } // try-catch
   } // Block(int, Transaction, Hash, long)
 
+  /**
+   * Create a block whose hash is already known, such as one read back
+   * from storage.
+   *
+   * @param num
+   *   The number of the block.
+   * @param trans
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   * @param thisNonce
+   *   The nonce of the block.
+   * @param thisHash
+   *   The hash of the block.
+   */
+  Block(int num, Transaction trans, Hash prevHash, long thisNonce, Hash thisHash) {
+    this.blockNum = num;
+    this.transaction = trans;
+    this.previousHash = prevHash;
+    this.nonce = thisNonce;
+    this.hash = thisHash;
+  } // Block(int, Transaction, Hash, long, Hash)
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
@@ -114,20 +136,57 @@ public class Block {
    * @throws NoSuchAlgorithmException
    */
   void computeHash() throws NoSuchAlgorithmException {
-    MessageDigest md = MessageDigest.getInstance("sha-256");
-    md.update(ByteBuffer.allocate(Integer.BYTES).putInt(this.blockNum).array());
-    md.update(this.transaction.getSource().getBytes());
-    md.update(this.transaction.getTarget().getBytes());
-    md.update(ByteBuffer.allocate(Integer.BYTES).putInt(this.transaction.getAmount()).array());
-    md.update(this.previousHash.getBytes());
-    md.update(ByteBuffer.allocate(Long.BYTES).putLong(this.nonce).array());
-    this.hash = new Hash(md.digest());
+    this.hash = new Hash(BlockHasher.local().digest(this.blockNum, this.transaction,
+        this.previousHash, this.nonce));
   } // computeHash()
 
+  /**
+   * Determine if the stored hash is the correct hash for the contents of
+   * the block, without allocating.
+   *
+   * @return true if the stored hash matches the contents.
+   */
+  boolean hashMatches() {
+    byte[] expected = BlockHasher.local().digest(this.blockNum, this.transaction,
+        this.previousHash, this.nonce);
+    return (this.hash != null) && this.hash.matches(expected, 0, expected.length);
+  } // hashMatches()
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
 
+  /**
+   * Encode the block (see BlockCodec). The hash of the block is the
+   * SHA-256 digest of the result, so the same bytes can be stored, sent,
+   * and checked.
+   *
+   * @return the encoding.
+   */
+  public byte[] encode() {
+    return BlockCodec.encode(ByteBuffer.allocate(BlockCodec.length(this)), this).array();
+  } // encode()
+
+  /**
+   * Decode a block. Its hash is the digest of the bytes given.
+   *
+   * @param data
+   *   The encoding of the block, and nothing else.
+   *
+   * @return the block.
+   *
+   * @throws IllegalArgumentException
+   *   If the bytes do not encode a block.
+   */
+  public static Block decode(byte[] data) {
+    ByteBuffer buf = ByteBuffer.wrap(data);
+    Block blk = BlockCodec.decode(buf);
+    if (buf.hasRemaining()) {
+      throw new IllegalArgumentException("Trailing bytes after block");
+    } // if
+    return blk;
+  } // decode(byte[])
+
   /**
    * Get the number of the block.
    *
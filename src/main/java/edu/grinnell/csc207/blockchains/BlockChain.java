@@ -1,8 +1,25 @@
 package edu.grinnell.csc207.blockchains;
 
-import java.util.HashMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A full blockchain.
@@ -10,20 +27,20 @@ import java.util.Set;
  * @author Sarah Deschamps
  * @author Jana Vadillo
  */
-public class BlockChain implements Iterable<Transaction> {
+public class BlockChain implements Iterable<Transaction>, Closeable {
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
 
   /**
-   * The first block in the BlockChain.
+   * The blocks in the BlockChain, indexed by number.
    */
-  BlockNode first;
+  BlockStore store;
 
   /**
-   * The last block in the BlockChain.
+   * The number of each block, by hash.
    */
-  BlockNode last;
+  HashIndex index;
 
   /**
    * The validator that determines if the BlockChain is valid.
@@ -31,9 +48,61 @@ public class BlockChain implements Iterable<Transaction> {
   HashValidator valid;
 
   /**
-   * The table of users and deposits.
+   * The IDs of the users.
    */
-  HashMap<String, Integer> clients;
+  UserDictionary userIds;
+
+  /**
+   * The balances of the users, as of the last block.
+   */
+  Ledger ledger;
+
+  /**
+   * The users ordered by their balances in the ledger.
+   */
+  BalanceIndex ranks;
+
+  /**
+   * The blocks that name each user.
+   */
+  Postings postings;
+
+  /**
+   * Copies of the balances taken every so many blocks.
+   */
+  Checkpoints checkpoints;
+
+  /**
+   * The balances replayed while checking the first verified blocks.
+   */
+  Ledger audited;
+
+  /**
+   * The number of blocks, from the first, known to be correct. Blocks
+   * past this height are checked by the next call to check().
+   */
+  int verified;
+
+  /**
+   * The miner used to find nonces for new blocks.
+   */
+  Miner miner;
+
+  /**
+   * The searches in progress for blocks to follow the last block.
+   */
+  Set<MiningTask> pending;
+
+  /**
+   * Counters and timings for this chain.
+   */
+  ChainMetrics metrics;
+
+  /**
+   * The file the blocks are kept in, or null if they are only kept in
+   * memory.
+   */
+  BlockLog log;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -46,17 +115,105 @@ public class BlockChain implements Iterable<Transaction> {
    *   The validator used to check elements.
    */
   public BlockChain(HashValidator check) {
-    Transaction emptyTransaction = new Transaction("", "", 0);
-    byte[] emptyBytes = new byte[] {};
-    Hash next = new Hash(emptyBytes);
-    Block block = new Block(0, emptyTransaction, next, check);
-    BlockNode node = new BlockNode(block);
-    this.first = node;
-    this.last = node;
-    this.valid = check;
-    this.clients = new HashMap<String, Integer>();
+    this(check, new Miner());
   } // BlockChain(HashValidator)
 
+  /**
+   * Create a new blockchain using a validator to check elements and
+   * the given miner to mine new blocks.
+   *
+   * @param check
+   *   The validator used to check elements.
+   * @param blockMiner
+   *   The miner used to find nonces.
+   */
+  public BlockChain(HashValidator check, Miner blockMiner) {
+    this(check, blockMiner, Checkpoints.INTERVAL);
+  } // BlockChain(HashValidator, Miner)
+
+  /**
+   * Create a new blockchain using a validator to check elements, the
+   * given miner to mine new blocks, and checkpoints of the balances every
+   * interval blocks. Shorter intervals make balanceAt faster and take a
+   * copy of every balance more often.
+   *
+   * @param check
+   *   The validator used to check elements.
+   * @param blockMiner
+   *   The miner used to find nonces.
+   * @param interval
+   *   The number of blocks between checkpoints.
+   *
+   * @throws IllegalArgumentException if interval is less than 1.
+   */
+  public BlockChain(HashValidator check, Miner blockMiner, int interval) {
+    this(check, blockMiner, interval, new SegmentedBlockStore(), null);
+  } // BlockChain(HashValidator, Miner, int)
+
+  /**
+   * Create a blockchain over a store. If the store is empty, the chain
+   * starts with a given block, or with a newly mined one. Otherwise the
+   * chain holds the blocks already stored, which are indexed but not
+   * checked until the next call to check().
+   *
+   * @param check
+   *   The validator used to check elements.
+   * @param blockMiner
+   *   The miner used to find nonces.
+   * @param interval
+   *   The number of blocks between checkpoints.
+   * @param blocks
+   *   The store of blocks.
+   * @param first
+   *   The first block for an empty store, or null to mine one. Like a
+   *   mined one, it must be block 0, with an empty previous hash and an
+   *   empty transaction, which moves no money.
+   *
+   * @throws IllegalArgumentException if interval is less than 1 or the
+   *   first block is not a valid first block.
+   */
+  private BlockChain(HashValidator check, Miner blockMiner, int interval, BlockStore blocks,
+      Block first) {
+    this.checkpoints = new Checkpoints(interval);
+    this.miner = blockMiner;
+    this.store = blocks;
+    Block block = first;
+    if (this.store.size() > 0) {
+      block = null;
+    } else if (block == null) {
+      Transaction emptyTransaction = new Transaction("", "", 0);
+      byte[] emptyBytes = new byte[] {};
+      Hash next = new Hash(emptyBytes);
+      block = this.miner.mine(0, emptyTransaction, next, check);
+    } else if ((block.getNum() != 0) || (block.getPrevHash().length() != 0)
+        || !block.getTransaction().equals(new Transaction("", "", 0))
+        || !check.isValid(block.getHash()) || !block.hashMatches()) {
+      throw new IllegalArgumentException("Not a valid first block");
+    } // if-else
+    if (block != null) {
+      this.store.add(block);
+    } // if
+    this.index = new HashIndex(this.store);
+    this.index.add(0);
+    this.valid = check;
+    this.userIds = new UserDictionary();
+    this.ranks = new BalanceIndex();
+    this.ledger = new Ledger(this.userIds, this.ranks);
+    this.postings = new Postings(this.userIds);
+    this.checkpoints.added(0, this.ledger);
+    for (int num = 1; num < this.store.size(); num++) {
+      Transaction t = this.store.get(num).getTransaction();
+      this.index.add(num);
+      this.ledger.apply(t);
+      this.postings.add(t, num);
+      this.checkpoints.added(num, this.ledger);
+    } // for
+    this.audited = new Ledger(this.userIds);
+    this.verified = 0;
+    this.pending = ConcurrentHashMap.newKeySet();
+    this.metrics = new ChainMetrics();
+  } // BlockChain(HashValidator, Miner, int, BlockStore, Block)
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
@@ -73,79 +230,584 @@ public class BlockChain implements Iterable<Transaction> {
     Hash prevHash = blk.getPrevHash();
     Hash blockHash = blk.getHash();
     int previous = blk.getNum() - 1;
-    if (!this.valid.isValid(blockHash)
-        || !prevHash.equals(this.getNode(previous).getBlock().getHash())) {
+    if (!this.valid.isValid(blockHash)) {
+      this.metrics.rejected();
       throw new IllegalArgumentException();
-    } // if the  hash is not valid or the previous hash is not correct raise a fuss
-    try {
-      blk.computeHash();
+    } // if
+    if (previous != this.store.size() - 1) {
+      throw new IllegalArgumentException("Block " + blk.getNum()
+          + " does not follow the last block");
+    } // if
+    if (!prevHash.equals(this.store.hash(previous))) {
+      throw new IllegalArgumentException();
+    } // if the previous hash is not correct raise a fuss
+    return blk.hashMatches();
+  } // checkBlock(Block)
 
-      Hash expectedHash = blk.getHash();
-      if (!(blockHash.equals(expectedHash))) {
-        throw new IllegalArgumentException();
+  /**
+   * Add a block that has been checked, and written to the log if there
+   * is one, to the store, the index, and the balances.
+   *
+   * @param blk
+   *   The block, which follows the last block.
+   */
+  private void added(Block blk) {
+    this.store.add(blk);
+    this.index.add(blk.getNum());
+    blk.getTransaction().intern(this.userIds);
+    this.ledger.apply(blk.getTransaction());
+    this.postings.add(blk.getTransaction(), blk.getNum());
+    this.checkpoints.added(blk.getNum(), this.ledger);
+    tipChanged();
+  } // added(Block)
+
+  /**
+   * Verify the blocks past the verified height, as described in check(),
+   * raising the verified height past the blocks that pass. Hashes and
+   * links are checked in parallel by a ChainVerifier, and the
+   * transactions are replayed by user, also in parallel, into the
+   * audited ledger, so the balances of the chain are left alone.
+   *
+   * @param rescan
+   *   Whether to forget what has been verified and start from the first
+   *   block.
+   *
+   * @throws Exception
+   *   If things are wrong at any block.
+   */
+  private void verify(boolean rescan) throws Exception {
+    if (rescan) {
+      this.audited = new Ledger(this.userIds);
+      this.verified = 0;
+    } // if
+    Hash prev = (this.verified == 0)
+        ? new Hash(new byte[] {})
+        : this.store.hash(this.verified - 1);
+    ChainVerifier.Failure bad = new ChainVerifier(this.store, this.valid, ChainVerifier.CHUNK)
+        .verify(this.verified, this.store.size(), prev);
+    int end = (bad == null) ? this.store.size() : bad.num + 1;
+    int paid = new ShardedReplay(this.store, this.audited).replay(this.verified, end);
+    if (paid < end) {
+      this.verified = paid;
+      throw new Exception("Transactions are invalid");
+    } // if
+    if (bad != null) {
+      this.audited.undo();
+      this.verified = bad.num;
+      if (bad.rejected) {
+        this.metrics.rejected();
       } // if
-    } catch (Exception e) {
-      return false;
-      // do not append
-    } // try-catch
-    return true;
-  } // checkBlock(Block)
+      throw new Exception(bad.message);
+    } // if
+    this.verified = end;
+  } // verify(boolean)
 
   /**
-   * Returns the block with the given number. Return null
-   * if this block doesn't exist.
+   * Keep track of a search until it finishes, so that it can be
+   * cancelled if the last block changes and so that it is counted in the
+   * metrics.
    *
-   * @param num
-   *    The block number.
+   * @param task
+   *   The search.
    *
-   * @return the block with the block number.
+   * @return a future that completes like the search, once it has been
+   *   counted.
+   */
+  private CompletableFuture<Block> track(MiningTask task) {
+    long start = System.nanoTime();
+    ChainMetrics.MinedEvent event = new ChainMetrics.MinedEvent();
+    event.begin();
+    this.pending.add(task);
+    return task.whenComplete((blk, e) -> {
+      this.pending.remove(task);
+      this.metrics.mined(task, System.nanoTime() - start, event);
+    });
+  } // track(MiningTask)
+
+  /**
+   * Cancel any searches for blocks that no longer follow the last block.
    */
-  private BlockNode getNode(int num) {
-    BlockNode curr = this.first;
-    for (int i = 0; i < num; i++) {
-      if (curr.getNext() == null) {
-        return null;
+  private void tipChanged() {
+    Hash tip = this.getHash();
+    for (MiningTask task : this.pending) {
+      if (!task.getPrevHash().equals(tip)) {
+        task.completeExceptionally(
+            new CancellationException("The chain changed while mining"));
       } // if
-      curr = curr.getNext();
     } // for
-    return curr;
-  } // getBlock(int)
+  } // tipChanged()
 
   /**
-   * Updates the HashMap of users given the transaction.
+   * Get the users with a range of ranks in the balance index, from the
+   * highest balance down.
    *
-   * @param t
-   *    The transaction from which to read.
+   * @param low
+   *   The lowest rank to include.
+   * @param high
+   *   One more than the highest rank to include.
    *
-   * @return true if the addition is valid, false otherwise.
+   * @return an iterator of those users.
    */
-  private boolean addTransaction(Transaction t) {
-    String source = t.getSource();
-    String target = t.getTarget();
-    int amount = t.getAmount();
-    if (clients.containsKey(target)) {
-      int amounttgt = (int) this.clients.get(target) + amount;
-      this.clients.put(target, amounttgt);
-    } else {
-      this.clients.put(target, amount);
-    } // if-else
-    if (!source.equals("") && clients.containsKey(source)) {
-      int amountsrc = (int) this.clients.get(source) - amount;
-      this.clients.put(source, amountsrc);
-      if (amountsrc < 0) {
-        return false;
+  private Iterator<String> ranked(int low, int high) {
+    return new Iterator<String>() {
+      int next = high - 1;
+
+      public boolean hasNext() {
+        return this.next >= low;
+      } // hasNext()
+
+      public String next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        return userIds.name(ranks.select(this.next--));
+      } // next()
+    };
+  } // ranked(int, int)
+
+  /**
+   * Create a blockchain from the blocks in a stream, as described in
+   * importBinary.
+   *
+   * @param in
+   *   The blocks.
+   * @param check
+   *   The validator used to check elements.
+   * @param blockMiner
+   *   The miner used to find nonces.
+   * @param blocks
+   *   The empty store to keep the blocks in.
+   *
+   * @return the chain.
+   *
+   * @throws IOException
+   *   If the stream cannot be read or its blocks do not form a valid
+   *   chain.
+   */
+  private static BlockChain load(ChainStream.Input in, HashValidator check, Miner blockMiner,
+      BlockStore blocks) throws IOException {
+    Block first = in.next();
+    if (first == null) {
+      throw new IOException("The stream holds no blocks");
+    } // if
+    BlockChain chain;
+    try {
+      chain = new BlockChain(check, blockMiner, Checkpoints.INTERVAL, blocks, first);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("The stream does not start with a valid first block", e);
+    } // try-catch
+    chain.load(in);
+    return chain;
+  } // load(ChainStream.Input, HashValidator, Miner, BlockStore)
+
+  /**
+   * Create a blockchain kept in memory-mapped files from the blocks in
+   * a stream, as described in importBinary.
+   *
+   * @param in
+   *   The blocks.
+   * @param dir
+   *   The directory to keep the files in, which must not already hold
+   *   blocks.
+   * @param check
+   *   The validator used to check elements.
+   * @param blockMiner
+   *   The miner used to find nonces.
+   *
+   * @return the chain.
+   *
+   * @throws IOException
+   *   If the files cannot be opened or already hold blocks, or the
+   *   stream cannot be read or its blocks do not form a valid chain.
+   *   The files are then left without blocks.
+   */
+  private static BlockChain loadMapped(ChainStream.Input in, Path dir, HashValidator check,
+      Miner blockMiner) throws IOException {
+    MappedBlockStore blocks = MappedBlockStore.open(dir);
+    if (blocks.size() != 0) {
+      blocks.close();
+      throw new IOException(dir + " already holds blocks");
+    } // if
+    try {
+      BlockChain chain = load(in, check, blockMiner, blocks);
+      blocks.sync();
+      return chain;
+    } catch (IOException | RuntimeException e) {
+      // Leave the files empty, as they were, so that closing them does
+      // not keep half an import and the directory can be used again.
+      try {
+        while (blocks.size() > 0) {
+          blocks.removeLast();
+        } // while
+      } finally {
+        blocks.close();
+      } // try-finally
+      throw e;
+    } // try-catch
+  } // loadMapped(ChainStream.Input, Path, HashValidator, Miner)
+
+  /**
+   * Add the blocks in a stream to the end of the chain. Each block's
+   * hash, previous hash, and amount are checked as it is read. The
+   * transactions are replayed into the ledger a batch at a time, each
+   * batch ending by the next checkpoint, and the first source that
+   * cannot pay ends the import.
+   *
+   * @param in
+   *   The blocks.
+   *
+   * @throws IOException
+   *   If the stream cannot be read or a block does not fit the chain.
+   */
+  private void load(ChainStream.Input in) throws IOException {
+    int interval = this.checkpoints.interval;
+    Block blk = in.next();
+    while (blk != null) {
+      int start = this.store.size();
+      int end = Math.min(start + ChainStream.BATCH, (start / interval + 1) * interval);
+      while ((blk != null) && (this.store.size() < end)) {
+        try {
+          if (!checkBlock(blk) || (blk.getTransaction().getAmount() < 0)) {
+            throw new IllegalArgumentException();
+          } // if
+        } catch (IllegalArgumentException e) {
+          throw new IOException("Block " + blk.getNum() + " does not fit the chain", e);
+        } // try-catch
+        this.store.add(blk);
+        this.index.add(blk.getNum());
+        blk.getTransaction().intern(this.userIds);
+        this.postings.add(blk.getTransaction(), blk.getNum());
+        blk = in.next();
+      } // while
+      end = this.store.size();
+      int paid = new ShardedReplay(this.store, this.ledger).replay(start, end);
+      if (paid < end) {
+        throw new IOException("The source of block " + paid + " cannot pay");
       } // if
-    } else if (!source.equals("") && !clients.containsKey(source)) {
-      this.clients.put(source, -1 * amount);
-      return false;
-    } // if-else
-    return true;
-  } // addTransaction(Transaction)
+      for (int num = start; num < end; num++) {
+        this.checkpoints.added(num, this.ledger);
+      } // for
+    } // while
+  } // load(ChainStream.Input)
 
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
 
+  /**
+   * Open a blockchain kept in a file, creating the file if need be.
+   *
+   * @param file
+   *   The file holding the blocks.
+   * @param check
+   *   The validator used to check elements.
+   *
+   * @return the chain, holding every block in the file.
+   *
+   * @throws IOException
+   *   If the file cannot be read or written, or holds blocks that do
+   *   not form a valid chain.
+   */
+  public static BlockChain open(Path file, HashValidator check) throws IOException {
+    return open(file, check, new Miner(), BlockLog.GROUP);
+  } // open(Path, HashValidator)
+
+  /**
+   * Open a blockchain kept in a file, creating the file if need be. A
+   * torn or corrupt record at the end of the file, left by a crash, is
+   * cut off along with everything after it. Changes are forced to disk
+   * once every groupSize changes, by sync(), and by close().
+   *
+   * @param file
+   *   The file holding the blocks.
+   * @param check
+   *   The validator used to check elements.
+   * @param blockMiner
+   *   The miner used to find nonces.
+   * @param groupSize
+   *   The number of changes between forcing the file to disk; 1 forces
+   *   every change.
+   *
+   * @return the chain, holding every block in the file.
+   *
+   * @throws IOException
+   *   If the file cannot be read or written, or holds blocks that do
+   *   not form a valid chain.
+   * @throws IllegalArgumentException
+   *   If groupSize is less than 1.
+   */
+  public static BlockChain open(Path file, HashValidator check, Miner blockMiner,
+      int groupSize) throws IOException {
+    BlockChain[] chain = new BlockChain[1];
+    BlockLog log = BlockLog.open(file, groupSize, (blk) -> {
+      if (chain[0] == null) {
+        chain[0] = new BlockChain(check, blockMiner, Checkpoints.INTERVAL,
+            new SegmentedBlockStore(), blk);
+      } else {
+        chain[0].append(blk);
+      } // if-else
+    });
+    try {
+      if (chain[0] == null) {
+        chain[0] = new BlockChain(check, blockMiner);
+        log.append(chain[0].getLastBlock());
+        log.sync();
+      } // if
+    } catch (IOException e) {
+      log.close();
+      throw e;
+    } // try-catch
+    chain[0].log = log;
+    return chain[0];
+  } // open(Path, HashValidator, Miner, int)
+
+  /**
+   * Open a blockchain kept in memory-mapped files in a directory,
+   * creating them if need be. Blocks are read from the files when they
+   * are needed rather than held on the heap. Opening indexes the stored
+   * blocks without checking them; check() checks them. Blocks are forced
+   * to disk by sync() and close(); a crash loses the blocks added since.
+   *
+   * @param dir
+   *   The directory holding the files.
+   * @param check
+   *   The validator used to check elements.
+   * @param blockMiner
+   *   The miner used to find nonces.
+   *
+   * @return the chain, holding every block in the files.
+   *
+   * @throws IOException
+   *   If the files cannot be opened or mapped, or are not a block store.
+   */
+  public static BlockChain openMapped(Path dir, HashValidator check, Miner blockMiner)
+      throws IOException {
+    MappedBlockStore blocks = MappedBlockStore.open(dir);
+    try {
+      BlockChain chain = new BlockChain(check, blockMiner, Checkpoints.INTERVAL, blocks, null);
+      blocks.sync();
+      return chain;
+    } catch (IOException | RuntimeException e) {
+      blocks.close();
+      throw e;
+    } // try-catch
+  } // openMapped(Path, HashValidator, Miner)
+
+  /**
+   * Read a blockchain written by exportBinary. Blocks are checked as
+   * they are read, as they would be by append(), and their transactions
+   * are applied to the balances in batches; a source that cannot pay
+   * makes the stream invalid. Beyond the chain itself, the import keeps
+   * only one block and one batch of bookkeeping, however long the stream.
+   * The chain is kept in memory; to keep a long one in files, import it
+   * into a directory instead.
+   *
+   * @param in
+   *   Where to read the blocks from. It is not closed.
+   * @param check
+   *   The validator used to check elements.
+   *
+   * @return a chain, kept in memory, holding the blocks.
+   *
+   * @throws IOException
+   *   If the stream cannot be read, is not in the binary format, or
+   *   holds blocks that do not form a valid chain.
+   */
+  public static BlockChain importBinary(InputStream in, HashValidator check)
+      throws IOException {
+    return load(ChainStream.readBinary(in), check, new Miner(), new SegmentedBlockStore());
+  } // importBinary(InputStream, HashValidator)
+
+  /**
+   * Read a blockchain written by exportBinary into memory-mapped files
+   * in a directory, checking it as in importBinary. The blocks go
+   * straight to the files, so the heap holds only the indexes and
+   * balances, as for a chain opened by openMapped.
+   *
+   * @param in
+   *   Where to read the blocks from. It is not closed.
+   * @param dir
+   *   The directory to keep the files in, which must not already hold
+   *   blocks.
+   * @param check
+   *   The validator used to check elements.
+   * @param blockMiner
+   *   The miner used to find nonces.
+   *
+   * @return a chain, kept in the files, holding the blocks.
+   *
+   * @throws IOException
+   *   If the files cannot be opened or already hold blocks, or the
+   *   stream cannot be read, is not in the binary format, or holds
+   *   blocks that do not form a valid chain.
+   */
+  public static BlockChain importBinary(InputStream in, Path dir, HashValidator check,
+      Miner blockMiner) throws IOException {
+    return loadMapped(ChainStream.readBinary(in), dir, check, blockMiner);
+  } // importBinary(InputStream, Path, HashValidator, Miner)
+
+  /**
+   * Read a blockchain written by exportText, checking it as in
+   * importBinary.
+   *
+   * @param in
+   *   Where to read the blocks from. It is not closed.
+   * @param check
+   *   The validator used to check elements.
+   *
+   * @return a chain, kept in memory, holding the blocks.
+   *
+   * @throws IOException
+   *   If the stream cannot be read, has a line that is not a block, or
+   *   holds blocks that do not form a valid chain.
+   */
+  public static BlockChain importText(Reader in, HashValidator check) throws IOException {
+    return load(ChainStream.readText(in), check, new Miner(), new SegmentedBlockStore());
+  } // importText(Reader, HashValidator)
+
+  /**
+   * Read a blockchain written by exportText into memory-mapped files in
+   * a directory, checking it as in importBinary.
+   *
+   * @param in
+   *   Where to read the blocks from. It is not closed.
+   * @param dir
+   *   The directory to keep the files in, which must not already hold
+   *   blocks.
+   * @param check
+   *   The validator used to check elements.
+   * @param blockMiner
+   *   The miner used to find nonces.
+   *
+   * @return a chain, kept in the files, holding the blocks.
+   *
+   * @throws IOException
+   *   If the files cannot be opened or already hold blocks, or the
+   *   stream cannot be read, has a line that is not a block, or holds
+   *   blocks that do not form a valid chain.
+   */
+  public static BlockChain importText(Reader in, Path dir, HashValidator check,
+      Miner blockMiner) throws IOException {
+    return loadMapped(ChainStream.readText(in), dir, check, blockMiner);
+  } // importText(Reader, Path, HashValidator, Miner)
+
+  /**
+   * Write every block, in order, in a compact binary format that
+   * importBinary reads. The blocks are written one at a time.
+   *
+   * @param out
+   *   Where to write the blocks. It is flushed but not closed.
+   *
+   * @throws IOException
+   *   If the blocks cannot be written.
+   */
+  public void exportBinary(OutputStream out) throws IOException {
+    ChainStream.writeBinary(this.blocks(), out);
+  } // exportBinary(OutputStream)
+
+  /**
+   * Write every block, in order, as one line of JSON each, which
+   * importText reads. The blocks are written one at a time.
+   *
+   * @param out
+   *   Where to write the blocks. It is flushed but not closed.
+   *
+   * @throws IOException
+   *   If the blocks cannot be written.
+   */
+  public void exportText(Writer out) throws IOException {
+    ChainStream.writeText(this.blocks(), out);
+  } // exportText(Writer)
+
+  /**
+   * Send a run of blocks to another chain, which takes them with
+   * receiveSegment. If the chain is kept in a file (see open), the
+   * blocks go from the file to the channel as they are stored, without
+   * being read into blocks or encoded again; otherwise they are encoded
+   * into a direct buffer a batch at a time.
+   *
+   * @param from
+   *   The number of the first block to send.
+   * @param to
+   *   The number of the block after the last one to send.
+   * @param out
+   *   Where to send them, such as a socket or a file. It must be in
+   *   blocking mode, and it is not closed.
+   *
+   * @throws IOException
+   *   If the blocks cannot be sent.
+   * @throws IndexOutOfBoundsException
+   *   If the run is not within the chain.
+   */
+  public void exportSegment(int from, int to, WritableByteChannel out) throws IOException {
+    if ((from < 0) || (to > this.getSize()) || (from > to)) {
+      throw new IndexOutOfBoundsException("Blocks " + from + " to " + to);
+    } // if
+    Hash before = (from == 0) ? new Hash(new byte[] {}) : this.store.hash(from - 1);
+    Hash end = (from == to) ? before : this.store.hash(to - 1);
+    if (this.log != null) {
+      ChainSegment.send(this.log, from, to, before, end, out);
+    } else {
+      ChainSegment.send(this.store, from, to, before, end, out);
+    } // if-else
+  } // exportSegment(int, int, WritableByteChannel)
+
+  /**
+   * Add a run of blocks sent by exportSegment to the end of the chain.
+   * The segment must start just after the last block. Each block's hash
+   * is computed from the bytes received and must satisfy the validator
+   * and link to the block before it, and the last must have the hash
+   * the sender gave. Balances are not checked here; they are checked by
+   * the next call to check(). If the chain is kept in a file, the blocks
+   * are written to it as they were received. If any block fails, every
+   * block of the segment is removed again.
+   *
+   * @param in
+   *   Where to read the segment from, in blocking mode. It is not
+   *   closed.
+   *
+   * @return the number of blocks added.
+   *
+   * @throws IOException
+   *   If the segment cannot be read, does not follow the last block, or
+   *   holds a block that fails.
+   */
+  public int receiveSegment(ReadableByteChannel in) throws IOException {
+    ChainSegment segment = ChainSegment.open(in);
+    int size = this.getSize();
+    if ((segment.first != size) || !segment.prev.equals(this.getHash())) {
+      throw new IOException("The segment does not follow the last block");
+    } // if
+    try {
+      ByteBuffer record = segment.next();
+      while (record != null) {
+        ByteBuffer contents = record.duplicate().position(BlockLog.RECORD_HEADER);
+        Block blk = BlockCodec.decode(contents);
+        if (contents.hasRemaining() || (blk.getNum() != this.getSize())
+            || !blk.getPrevHash().equals(this.getHash()) || !this.valid.isValid(blk.getHash())
+            || (blk.getTransaction().getAmount() < 0)) {
+          throw new IOException("Block " + (segment.first + segment.read - 1)
+              + " of the segment does not fit the chain");
+        } // if
+        if (this.log != null) {
+          this.log.appendRecord(record);
+        } // if
+        added(blk);
+        record = segment.next();
+      } // while
+      if (!this.getHash().equals(segment.last)) {
+        throw new IOException("The segment does not end with the block it names");
+      } // if
+    } catch (IOException | IllegalArgumentException e) {
+      while (this.getSize() > size) {
+        this.removeLast();
+      } // while
+      throw (e instanceof IOException)
+          ? (IOException) e
+          : new IOException("Malformed block in the segment", e);
+    } // try-catch
+    return segment.count;
+  } // receiveSegment(ReadableByteChannel)
 
   /**
    * Gets the last block.
@@ -153,7 +815,7 @@ public class BlockChain implements Iterable<Transaction> {
    * @return the last block in the block chain.
    */
   public Block getLastBlock() {
-    return this.last.getBlock();
+    return this.store.get(this.store.size() - 1);
   } // getLastBlock()
 
   /**
@@ -166,18 +828,98 @@ public class BlockChain implements Iterable<Transaction> {
    * @return a new block with correct number, hashes, and such.
    */
   public Block mine(Transaction t) {
-    int lastNum = this.last.getBlock().getNum();
-    Hash lastHash = this.last.getBlock().getHash();
-    return new Block(lastNum + 1, t, lastHash, this.valid);
+    int lastNum = this.getLastBlock().getNum();
+    Hash lastHash = this.getLastBlock().getHash();
+    MiningTask task = this.miner.mineAsync(lastNum + 1, t, lastHash, this.valid);
+    try {
+      return track(task).join();
+    } catch (CompletionException e) {
+      throw Miner.unwrap(e);
+    } finally {
+      task.cancel(false);
+    } // try-catch-finally
   } // mine(Transaction)
 
+  /**
+   * Start mining a new block for the end of the chain in the background.
+   * The search is cancelled if the task is cancelled or if the end of
+   * the chain changes (through append or removeLast) before it finishes.
+   *
+   * @param t
+   *   The transaction that goes in the block.
+   *
+   * @return a task that completes with the new block.
+   */
+  public MiningTask mineAsync(Transaction t) {
+    int lastNum = this.getLastBlock().getNum();
+    Hash lastHash = this.getLastBlock().getHash();
+    MiningTask task = this.miner.mineAsync(lastNum + 1, t, lastHash, this.valid);
+    track(task);
+    return task;
+  } // mineAsync(Transaction)
+
+  /**
+   * Start a resumable search for a new block for the end of the chain.
+   * Pass the session to mineAsync(MiningSession), saving it now and then
+   * with MiningSession.save.
+   *
+   * @param t
+   *   The transaction that goes in the block.
+   *
+   * @return a session with one range per mining thread.
+   */
+  public MiningSession newSession(Transaction t) {
+    int lastNum = this.getLastBlock().getNum();
+    Hash lastHash = this.getLastBlock().getHash();
+    return new MiningSession(lastNum + 1, t, lastHash, this.miner.getThreads());
+  } // newSession(Transaction)
+
+  /**
+   * Continue a mining session in the background, as in
+   * mineAsync(Transaction).
+   *
+   * @param session
+   *   The session to continue, possibly loaded from a checkpoint.
+   *
+   * @return a task that completes with the new block.
+   *
+   * @throws IllegalArgumentException if the session is not for a block
+   *   that follows the last block.
+   */
+  public MiningTask mineAsync(MiningSession session) {
+    if ((session.getNum() != this.getSize())
+        || !session.getPrevHash().equals(this.getHash())) {
+      throw new IllegalArgumentException("The session does not follow the last block");
+    } // if
+    MiningTask task = this.miner.mineAsync(session, this.valid);
+    track(task);
+    return task;
+  } // mineAsync(MiningSession)
+
+  /**
+   * Start mining a new block for the end of the chain in the background,
+   * giving up if no block is found before the deadline.
+   *
+   * @param t
+   *   The transaction that goes in the block.
+   * @param timeout
+   *   How long to search before failing with a TimeoutException.
+   *
+   * @return a task that completes with the new block.
+   */
+  public MiningTask mineAsync(Transaction t, Duration timeout) {
+    MiningTask task = mineAsync(t);
+    task.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    return task;
+  } // mineAsync(Transaction, Duration)
+
   /**
    * Get the number of blocks curently in the chain.
    *
    * @return the number of blocks in the chain, including the initial block.
    */
   public int getSize() {
-    return this.last.getBlock().getNum() + 1;
+    return this.store.size();
   } // getSize()
 
   /**
@@ -189,121 +931,203 @@ public class BlockChain implements Iterable<Transaction> {
    * @throws IllegalArgumentException if (a) the hash is not valid, (b)
    *   the hash is not appropriate for the contents, or (c) the previous
    *   hash is incorrect.
+   * @throws UncheckedIOException if the chain is kept in a file and the
+   *   block cannot be written to it.
    */
   public void append(Block blk) throws IllegalArgumentException {
-    BlockNode newBlockNode = new BlockNode(blk);
-    addTransaction(blk.getTransaction());
-    if (checkBlock(blk)) {
-      this.last.setNext(newBlockNode);
-      this.last = newBlockNode;
-    } else {
-      throw new IllegalArgumentException();
-    } // if-else
+    long start = System.nanoTime();
+    ChainMetrics.AppendEvent event = new ChainMetrics.AppendEvent();
+    event.begin();
+    boolean accepted = false;
+    try {
+      if (checkBlock(blk)) {
+        if (this.log != null) {
+          try {
+            this.log.append(blk);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          } // try-catch
+        } // if
+        added(blk);
+        accepted = true;
+      } else {
+        throw new IllegalArgumentException();
+      } // if-else
+    } finally {
+      this.metrics.appended(blk, System.nanoTime() - start, accepted, event);
+    } // try-finally
   } // append(Block)
 
   /**
-   * Attempt to remove the last block from the chain.
+   * Attempt to remove the last block from the chain, undoing its effect
+   * on the balances.
    *
    * @return false if the chain has only one block (in which case it's
    *   not removed) or true otherwise (in which case the last block
    *   is removed).
+   *
+   * @throws UncheckedIOException if the chain is kept in a file and the
+   *   block cannot be removed from it.
    */
   public boolean removeLast() {
     if (this.getSize() <= 1) {
       return false;
-    } else {
-      Transaction trans = this.last.getBlock().getTransaction();
-      String lasttarget = trans.getTarget();
-      String lastsrc = trans.getSource();
-      Iterator<Block> blks = blocks();
-      boolean hastarget = false;
-      boolean hassrc = false;
-      this.last = getNode(this.last.getBlock().getNum() - 1);
-      this.last.setNext(null);
-      while (blks.hasNext()) {
-        Block curr = blks.next();
-        Transaction currenttrans = curr.getTransaction();
-        if (currenttrans.getSource().equals(lasttarget)
-            || currenttrans.getTarget().equals(lasttarget)) {
-          hastarget = true;
-        } else if (currenttrans.getSource().equals(lastsrc)
-                  || currenttrans.getTarget().equals(lastsrc)) {
-          hassrc = true;
-        } // if-else
-      } // while
-      if (!hastarget) {
-        this.clients.remove(lasttarget);
-      } else if (!hassrc) {
-        this.clients.remove(lastsrc);
-      } // if-else
-      return true;
-    } // if-else
+    } // if
+    if (this.log != null) {
+      try {
+        this.log.removeLast();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } // try-catch
+    } // if
+    int num = this.store.size() - 1;
+    this.index.remove(num);
+    this.store.removeLast();
+    this.postings.remove(this.ledger.lastSource(), this.ledger.lastTarget(), num);
+    this.ledger.undo();
+    this.checkpoints.removed(num, this.ledger);
+    if (this.verified > this.store.size()) {
+      this.audited.undo();
+      this.verified = this.store.size();
+    } // if
+    tipChanged();
+    return true;
   } // removeLast()
 
+  /**
+   * Force every change to the chain so far to its files. Does nothing if
+   * the chain is only kept in memory.
+   *
+   * @throws IOException
+   *   If the files cannot be forced to disk.
+   */
+  public void sync() throws IOException {
+    this.store.sync();
+    if (this.log != null) {
+      this.log.sync();
+    } // if
+  } // sync()
+
+  /**
+   * Force every change to the chain to its files and close them.
+   * Does nothing if the chain is only kept in memory.
+   *
+   * @throws IOException
+   *   If the files cannot be forced or closed.
+   */
+  public void close() throws IOException {
+    try {
+      this.store.close();
+    } finally {
+      if (this.log != null) {
+        this.log.close();
+      } // if
+    } // try-finally
+  } // close()
+
+  /**
+   * Find the block with a given hash.
+   *
+   * @param hash
+   *   The hash of the block.
+   *
+   * @return the block with that hash, or null if no block in the chain
+   *   has it.
+   */
+  public Block findBlock(Hash hash) {
+    int num = this.index.find(hash);
+    return (num < 0) ? null : this.store.get(num);
+  } // findBlock(Hash)
+
   /**
    * Get the hash of the last block in the chain.
    *
    * @return the hash of the last sblock in the chain.
    */
   public Hash getHash() {
-    return this.last.getBlock().getHash();
+    return this.getLastBlock().getHash();
   } // getHash()
 
   /**
    * Determine if the blockchain is correct in that (a) the balances are
    * legal/correct at every step, (b) that every block has a correct
    * previous hash field, (c) that every block has a hash that is correct
-   * for its contents, and (d) that every block has a valid hash.
+   * for its contents, and (d) that every block has a valid hash. Only
+   * blocks added since the last successful check are examined.
    *
    * @return true if the blockchain is correct and false otherwise.
    */
   public boolean isCorrect() {
+    return isCorrect(false);
+  } // isCorrect()
+
+  /**
+   * Determine if the blockchain is correct, as in isCorrect(), possibly
+   * re-examining every block.
+   *
+   * @param rescan
+   *   Whether to re-examine blocks that were already checked, which
+   *   matters only if blocks may have been changed in place.
+   *
+   * @return true if the blockchain is correct and false otherwise.
+   */
+  public boolean isCorrect(boolean rescan) {
     try {
-      check();
+      check(rescan);
       return true;
     } catch (Exception e) {
       return false;
     } // try-catch
-  } // isCorrect()
+  } // isCorrect(boolean)
 
   /**
    * Determine if the blockchain is correct in that (a) the balances are
    * legal/correct at every step, (b) that every block has a correct
    * previous hash field, (c) that every block has a hash that is correct
-   * for its contents, and (d) that every block has a valid hash.
+   * for its contents, and (d) that every block has a valid hash. Only
+   * blocks added since the last successful check are examined.
    *
    * @throws Exception
    *   If things are wrong at any block.
    */
   public void check() throws Exception {
-    Iterator<Block> blks = blocks();
-    clients.clear();
-    byte[] emptyBytes = new byte[] {};
-    Hash prev = new Hash(emptyBytes);
-    while (blks.hasNext()) {
-      Block curr = blks.next();
-      if (!addTransaction(curr.getTransaction())) {
-        throw new Exception("Transactions are invalid");
-      } // if
-      if (!curr.getPrevHash().equals(prev)) {
-        throw new Exception("Previous hash is invalid");
-      } // if
-      prev = curr.getHash();
-      Hash thishash = curr.getHash();
-      curr.computeHash();
-      Hash actualhash = curr.getHash();
-      if (!thishash.equals(actualhash)) {
-        throw new Exception("Hash is not valid for its contents");
-      } // if
-      if (!valid.isValid(actualhash)) {
-        throw new Exception("Hash is not valid");
-      } // if
-      if (curr.getTransaction().getAmount() < 0) {
-        throw new Exception("Invalid transaction amount");
-      } // if
-    } // while
+    check(false);
   } // check()
 
+  /**
+   * Determine if the blockchain is correct, as in check(), possibly
+   * re-examining every block.
+   *
+   * @param rescan
+   *   Whether to re-examine blocks that were already checked, which
+   *   matters only if blocks may have been changed in place.
+   *
+   * @throws Exception
+   *   If things are wrong at any block.
+   */
+  public void check(boolean rescan) throws Exception {
+    long start = System.nanoTime();
+    ChainMetrics.CheckEvent event = new ChainMetrics.CheckEvent();
+    event.begin();
+    boolean correct = false;
+    try {
+      verify(rescan);
+      correct = true;
+    } finally {
+      this.metrics.checked(this.getSize(), System.nanoTime() - start, correct, event);
+    } // try-finally
+  } // check(boolean)
+
+  /**
+   * Get the counters and timings for mining, appending, and checking
+   * this chain.
+   *
+   * @return the metrics.
+   */
+  public ChainMetrics getMetrics() {
+    return this.metrics;
+  } // getMetrics()
+
   /**
    * Return an iterator of all the people who participated in the
    * system.
@@ -312,8 +1136,7 @@ public class BlockChain implements Iterable<Transaction> {
    */
   public Iterator<String> users() {
     return new Iterator<String>() {
-      Set<String> people = clients.keySet();
-      Iterator<String> iter = people.iterator();
+      Iterator<String> iter = ledger.users();
 
       public boolean hasNext() {
         return iter.hasNext();
@@ -326,7 +1149,63 @@ public class BlockChain implements Iterable<Transaction> {
   } // users()
 
   /**
-   * Find one user's.
+   * Get the users with the highest balances, from the highest down.
+   *
+   * @param count
+   *   The largest number of users to return.
+   *
+   * @return an iterator of those users.
+   *
+   * @throws IllegalArgumentException if count is negative.
+   */
+  public Iterator<String> topUsers(int count) {
+    return usersByBalance(0, count);
+  } // topUsers(int)
+
+  /**
+   * Get one page of the users ordered by balance, from the highest
+   * down. Users with equal balances come in a fixed order. The cost
+   * depends on the size of the page, not the number of users.
+   *
+   * @param offset
+   *   The number of users to skip.
+   * @param limit
+   *   The largest number of users to return.
+   *
+   * @return an iterator of the users in the page.
+   *
+   * @throws IllegalArgumentException if offset or limit is negative.
+   */
+  public Iterator<String> usersByBalance(int offset, int limit) {
+    if ((offset < 0) || (limit < 0)) {
+      throw new IllegalArgumentException("Negative offset or limit");
+    } // if
+    int size = this.ranks.size();
+    return ranked((int) Math.max(0L, (long) size - offset - limit),
+        Math.max(0, size - offset));
+  } // usersByBalance(int, int)
+
+  /**
+   * Get the users whose balances lie in a range, from the highest
+   * balance down.
+   *
+   * @param min
+   *   The lowest balance to include.
+   * @param max
+   *   The highest balance to include.
+   *
+   * @return an iterator of those users.
+   */
+  public Iterator<String> usersWithBalance(int min, int max) {
+    if (min > max) {
+      return ranked(0, 0);
+    } // if
+    return ranked(this.ranks.rank(min), this.ranks.rank((long) max + 1));
+  } // usersWithBalance(int, int)
+
+  /**
+   * Find one user's balance, as recorded when blocks were appended and
+   * removed.
    *
    * @param user
    *   The user whose balance we want to find.
@@ -334,44 +1213,106 @@ public class BlockChain implements Iterable<Transaction> {
    * @return that user's balance (or 0, if the user is not in the system).
    */
   public int balance(String user) {
-    Iterator<Block> blks = blocks();
-    int balance = 0;
-    while (blks.hasNext()) {
-      Block curr = blks.next();
-      Transaction trans = curr.getTransaction();
-      if (trans.getSource().equals(user)) {
-        balance -= trans.getAmount();
-      } else if (trans.getTarget().equals(user)) {
-        balance += trans.getAmount();
-      } // if-else
-    } // while
-    return balance;
+    return this.ledger.balance(user);
   } // balance()
 
   /**
-   * Get an iterator for all the blocks in the chain.
+   * Find the balance of a user as of a block. Starts from the last
+   * checkpoint at or before the block and adds the user's transactions
+   * since then.
    *
-   * @return an iterator for all the blocks in the chain.
+   * @param user
+   *   The user whose balance we want to find.
+   * @param height
+   *   The number of the last block to count.
+   *
+   * @return that user's balance after the block (or 0, if the user was
+   *   not yet in the system).
+   *
+   * @throws IllegalArgumentException if there is no block with that
+   *   number.
    */
-  public Iterator<Block> blocks() {
+  public int balanceAt(String user, int height) {
+    if ((height < 0) || (height >= this.store.size())) {
+      throw new IllegalArgumentException("No block " + height);
+    } // if
+    int id = this.userIds.find(user);
+    int balance = this.checkpoints.balance(id, height);
+    Postings.Run run = this.postings.run(id);
+    if (run == null) {
+      return balance;
+    } // if
+    for (int i = Postings.search(run, this.checkpoints.start(height));
+        (i < run.size) && (run.nums[i] <= height); i++) {
+      Transaction t = this.store.get(run.nums[i]).getTransaction();
+      if (t.getTarget().equals(user)) {
+        balance += t.getAmount();
+      } // if
+      if (t.getSource().equals(user)) {
+        balance -= t.getAmount();
+      } // if
+    } // for
+    return balance;
+  } // balanceAt(String, int)
+
+  /**
+   * Count the blocks whose transactions name a user as source or target.
+   *
+   * @param user
+   *   The user.
+   *
+   * @return the number of those blocks.
+   */
+  public int historySize(String user) {
+    return this.postings.count(user);
+  } // historySize(String)
+
+  /**
+   * Get one page of the blocks whose transactions name a user as source
+   * or target, in chain order. The cost depends on the size of the page,
+   * not the length of the chain.
+   *
+   * @param user
+   *   The user.
+   * @param offset
+   *   The number of the user's blocks to skip.
+   * @param limit
+   *   The largest number of blocks to return.
+   *
+   * @return an iterator for the blocks in the page.
+   *
+   * @throws IllegalArgumentException if offset or limit is negative.
+   */
+  public Iterator<Block> history(String user, int offset, int limit) {
+    if ((offset < 0) || (limit < 0)) {
+      throw new IllegalArgumentException("Negative offset or limit");
+    } // if
+    int end = (int) Math.min((long) offset + limit, this.postings.count(user));
     return new Iterator<Block>() {
-      BlockNode curr = null;
+      int next = offset;
+
       public boolean hasNext() {
-        if (curr == null) {
-          return first != null;
-        } // if
-        return curr.getNext() != null;
+        return this.next < end;
       } // hasNext()
 
       public Block next() {
-        if (curr == null) {
-          this.curr = first;
-          return first.getBlock();
+        if (!hasNext()) {
+          throw new NoSuchElementException();
         } // if
-        this.curr = this.curr.getNext();
-        return this.curr.getBlock();
+        return store.get(postings.get(user, this.next++));
       } // next()
     };
+  } // history(String, int, int)
+
+  /**
+   * Get an iterator for all the blocks in the chain. A chain kept in
+   * mapped files reuses one block for every step, so a block should not
+   * be kept past the next call to next().
+   *
+   * @return an iterator for all the blocks in the chain.
+   */
+  public Iterator<Block> blocks() {
+    return this.store.iterator();
   } // blocks()
 
   /**
@@ -0,0 +1,188 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The one binary encoding of blocks, used both to hash them and to
+ * write them out. All numbers are big-endian, and names and hashes are
+ * preceded by their lengths in bytes, so no two blocks share an
+ * encoding. A block is encoded as
+ *
+ *   int number, int length, UTF-8 source, int length, UTF-8 target,
+ *   int amount, int length, previous hash, long nonce
+ *
+ * and its hash is the SHA-256 digest of exactly those bytes. The nonce
+ * comes last so that miners can hash everything before it once.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class BlockCodec {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * A decoder for names on each thread, which refuses bytes that are not
+   * well-formed UTF-8, so that every name decoded encodes to the same
+   * bytes again.
+   */
+  static final ThreadLocal<CharsetDecoder> DECODERS =
+      ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT));
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Read a length and that many bytes.
+   *
+   * @param buf
+   *   The buffer to read from.
+   *
+   * @return the bytes.
+   *
+   * @throws IllegalArgumentException
+   *   If the length is negative or runs past the end of the buffer.
+   */
+  static byte[] readBytes(ByteBuffer buf) {
+    int len = buf.getInt();
+    if ((len < 0) || (len > buf.remaining())) {
+      throw new IllegalArgumentException("Bad length " + len);
+    } // if
+    byte[] bytes = new byte[len];
+    buf.get(bytes);
+    return bytes;
+  } // readBytes(ByteBuffer)
+
+  /**
+   * Read a length and that many bytes of UTF-8 name.
+   *
+   * @param buf
+   *   The buffer to read from.
+   *
+   * @return the name.
+   *
+   * @throws IllegalArgumentException
+   *   If the length is bad or the bytes are not well-formed UTF-8.
+   */
+  static String readName(ByteBuffer buf) {
+    byte[] bytes = readBytes(buf);
+    if (bytes.length == 0) {
+      return "";
+    } // if
+    try {
+      return DECODERS.get().decode(ByteBuffer.wrap(bytes)).toString();
+    } catch (CharacterCodingException e) {
+      throw new IllegalArgumentException("Name is not UTF-8", e);
+    } // try-catch
+  } // readName(ByteBuffer)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Count the bytes in the encoding of everything but the nonce.
+   *
+   * @param trans
+   *   The transaction of the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   *
+   * @return the number of bytes.
+   */
+  static int prefixLength(Transaction trans, Hash prevHash) {
+    return 5 * Integer.BYTES + trans.sourceBytes().length + trans.targetBytes().length
+        + prevHash.length();
+  } // prefixLength(Transaction, Hash)
+
+  /**
+   * Count the bytes in the encoding of a block.
+   *
+   * @param blk
+   *   The block.
+   *
+   * @return the number of bytes.
+   */
+  static int length(Block blk) {
+    return prefixLength(blk.getTransaction(), blk.getPrevHash()) + Long.BYTES;
+  } // length(Block)
+
+  /**
+   * Encode everything but the nonce.
+   *
+   * @param buf
+   *   The buffer to write to, which must be big-endian and have room.
+   * @param num
+   *   The number of the block.
+   * @param trans
+   *   The transaction of the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   *
+   * @return the buffer.
+   */
+  static ByteBuffer encodePrefix(ByteBuffer buf, int num, Transaction trans, Hash prevHash) {
+    byte[] source = trans.sourceBytes();
+    byte[] target = trans.targetBytes();
+    buf.putInt(num);
+    buf.putInt(source.length).put(source);
+    buf.putInt(target.length).put(target);
+    buf.putInt(trans.getAmount());
+    return prevHash.writeTo(buf.putInt(prevHash.length()));
+  } // encodePrefix(ByteBuffer, int, Transaction, Hash)
+
+  /**
+   * Encode a block.
+   *
+   * @param buf
+   *   The buffer to write to, which must be big-endian and have room.
+   * @param blk
+   *   The block.
+   *
+   * @return the buffer.
+   */
+  static ByteBuffer encode(ByteBuffer buf, Block blk) {
+    encodePrefix(buf, blk.getNum(), blk.getTransaction(), blk.getPrevHash());
+    return buf.putLong(blk.getNonce());
+  } // encode(ByteBuffer, Block)
+
+  /**
+   * Decode a block. Its hash is the digest of the bytes read, so they
+   * are never encoded again.
+   *
+   * @param buf
+   *   The big-endian buffer to read from, starting at its position,
+   *   which is left after the block.
+   *
+   * @return the block.
+   *
+   * @throws IllegalArgumentException
+   *   If the bytes do not encode a block, such as when a name is not
+   *   well-formed UTF-8.
+   */
+  static Block decode(ByteBuffer buf) {
+    int start = buf.position();
+    try {
+      int num = buf.getInt();
+      String source = readName(buf);
+      String target = readName(buf);
+      int amount = buf.getInt();
+      Hash prevHash = new Hash(readBytes(buf));
+      long nonce = buf.getLong();
+      Hash hash = new Hash(BlockHasher.local().digest(
+          buf.duplicate().position(start).limit(buf.position())));
+      return new Block(num, new Transaction(source, target, amount), prevHash, nonce, hash);
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated block", e);
+    } // try-catch
+  } // decode(ByteBuffer)
+} // class BlockCodec
@@ -0,0 +1,250 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes block hashes without allocating. A block's hash is the
+ * SHA-256 digest of its encoding (see BlockCodec). Each hasher owns a
+ * digest and buffers that it reuses from one hash to the next, so every
+ * thread should use its own hasher (see local()).
+ *
+ * While mining, everything but the nonce is the same from one attempt to
+ * the next. When that prefix fills at least one SHA-256 block, we feed it
+ * to a digest once and then, for each nonce, clone the partially-fed
+ * digest and add only the nonce. Shorter prefixes cost no more to rehash
+ * than to clone, so for them we rehash the whole block in place.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class BlockHasher {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes SHA-256 absorbs in each compression.
+   */
+  static final int SHA256_BLOCK = 64;
+
+  /**
+   * The hasher for each thread.
+   */
+  static final ThreadLocal<BlockHasher> LOCAL =
+      ThreadLocal.withInitial(BlockHasher::new);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The digest used for whole blocks.
+   */
+  MessageDigest md;
+
+  /**
+   * The digest that has absorbed everything but the nonce, or null if
+   * we hash whole blocks while mining.
+   */
+  MessageDigest prefix;
+
+  /**
+   * Room for the bytes of a nonce.
+   */
+  ByteBuffer scratch;
+
+  /**
+   * The encoding of everything but the nonce, grown as needed.
+   */
+  ByteBuffer encoded;
+
+  /**
+   * Where digests are written.
+   */
+  byte[] out;
+
+  /**
+   * The number of the block being mined.
+   */
+  int blockNum;
+
+  /**
+   * The transaction of the block being mined.
+   */
+  Transaction transaction;
+
+  /**
+   * The hash of the previous block of the block being mined.
+   */
+  Hash previousHash;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new hasher.
+   *
+   * @throws IllegalStateException
+   *   If SHA-256 is not available (every Java platform must provide it).
+   */
+  BlockHasher() {
+    try {
+      this.md = MessageDigest.getInstance("sha-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } // try-catch
+    this.scratch = ByteBuffer.allocate(Long.BYTES);
+    this.encoded = ByteBuffer.allocate(256);
+    this.out = new byte[this.md.getDigestLength()];
+  } // BlockHasher()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Feed everything but the nonce to a digest.
+   *
+   * @param digest
+   *   The digest to feed.
+   * @param num
+   *   The number of the block.
+   * @param trans
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   */
+  void feedPrefix(MessageDigest digest, int num, Transaction trans,
+      Hash prevHash) {
+    int length = BlockCodec.prefixLength(trans, prevHash);
+    if (this.encoded.capacity() < length) {
+      this.encoded = ByteBuffer.allocate(Math.max(length, this.encoded.capacity() * 2));
+    } // if
+    BlockCodec.encodePrefix(this.encoded.clear(), num, trans, prevHash);
+    digest.update(this.encoded.array(), 0, length);
+  } // feedPrefix(MessageDigest, int, Transaction, Hash)
+
+  /**
+   * Feed the nonce to a digest and finish it.
+   *
+   * @param digest
+   *   The digest to finish.
+   * @param nonce
+   *   The nonce of the block.
+   *
+   * @return the digest bytes, which are overwritten by the next hash.
+   */
+  byte[] finish(MessageDigest digest, long nonce) {
+    digest.update(this.scratch.putLong(0, nonce).array(), 0, Long.BYTES);
+    try {
+      digest.digest(this.out, 0, this.out.length);
+    } catch (DigestException e) {
+      // The output buffer always has room for the digest.
+      throw new IllegalStateException(e);
+    } // try-catch
+    return this.out;
+  } // finish(MessageDigest, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the hasher for the current thread.
+   *
+   * @return this thread's hasher.
+   */
+  static BlockHasher local() {
+    return LOCAL.get();
+  } // local()
+
+  /**
+   * Compute the hash of a block with the given contents.
+   *
+   * @param num
+   *   The number of the block.
+   * @param trans
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   * @param nonce
+   *   The nonce of the block.
+   *
+   * @return the digest bytes, which are overwritten by the next hash.
+   */
+  byte[] digest(int num, Transaction trans, Hash prevHash, long nonce) {
+    feedPrefix(this.md, num, trans, prevHash);
+    return finish(this.md, nonce);
+  } // digest(int, Transaction, Hash, long)
+
+  /**
+   * Compute the hash of an encoded block.
+   *
+   * @param encoding
+   *   The encoding, from its position to its limit, which it is left at.
+   *
+   * @return the digest bytes, which are overwritten by the next hash.
+   */
+  byte[] digest(ByteBuffer encoding) {
+    this.md.update(encoding);
+    try {
+      this.md.digest(this.out, 0, this.out.length);
+    } catch (DigestException e) {
+      // The output buffer always has room for the digest.
+      throw new IllegalStateException(e);
+    } // try-catch
+    return this.out;
+  } // digest(ByteBuffer)
+
+  /**
+   * Prepare to hash many candidates for one block with digest(long).
+   *
+   * @param num
+   *   The number of the block.
+   * @param trans
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   */
+  void prime(int num, Transaction trans, Hash prevHash) {
+    this.blockNum = num;
+    this.transaction = trans;
+    this.previousHash = prevHash;
+    this.prefix = null;
+    if (BlockCodec.prefixLength(trans, prevHash) >= SHA256_BLOCK) {
+      try {
+        MessageDigest saved = (MessageDigest) this.md.clone();
+        saved.reset();
+        feedPrefix(saved, num, trans, prevHash);
+        this.prefix = saved;
+      } catch (CloneNotSupportedException e) {
+        // Hash whole blocks instead.
+      } // try-catch
+    } // if
+  } // prime(int, Transaction, Hash)
+
+  /**
+   * Compute the hash of the primed block with the given nonce. The
+   * result is the same as the one computed by Block.computeHash.
+   *
+   * @param nonce
+   *   The nonce to try.
+   *
+   * @return the digest bytes, which are overwritten by the next hash.
+   */
+  byte[] digest(long nonce) {
+    if (this.prefix == null) {
+      return digest(this.blockNum, this.transaction, this.previousHash, nonce);
+    } // if
+    try {
+      return finish((MessageDigest) this.prefix.clone(), nonce);
+    } catch (CloneNotSupportedException e) {
+      // We cloned the same digest when we were primed.
+      throw new IllegalStateException(e);
+    } // try-catch
+  } // digest(long)
+} // class BlockHasher
@@ -0,0 +1,446 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only file of blocks. Each block is one record: its length,
+ * a CRC-32C of its contents, and the contents, which are the block's
+ * encoding (see BlockCodec). Opening the log replays
+ * the records in order and cuts off a torn or corrupt tail, such as a
+ * record half written when the machine went down.
+ *
+ * Records are written as blocks are appended, but the file is only
+ * forced to disk once every so many changes (a group commit), so a
+ * crash loses at most that many blocks and appends do not wait for the
+ * disk one block at a time. Call sync() for a durable point.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class BlockLog implements Closeable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The first int in every log.
+   */
+  static final int MAGIC = 0x426c6f67;
+
+  /**
+   * The version of the log format.
+   */
+  static final int VERSION = 2;
+
+  /**
+   * The number of bytes before the first record.
+   */
+  static final int HEADER = 8;
+
+  /**
+   * The number of bytes before the contents of a record.
+   */
+  static final int RECORD_HEADER = 8;
+
+  /**
+   * The largest record we believe. Longer lengths come from garbage.
+   */
+  static final int MAX_RECORD = 1 << 24;
+
+  /**
+   * The default number of changes between forcing the file to disk.
+   */
+  static final int GROUP = 64;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The file.
+   */
+  FileChannel channel;
+
+  /**
+   * The offset just past each record.
+   */
+  long[] ends = new long[16];
+
+  /**
+   * The number of records.
+   */
+  int count;
+
+  /**
+   * The number of changes between forcing the file to disk.
+   */
+  int group;
+
+  /**
+   * The number of changes since the file was last forced to disk.
+   */
+  int unsynced;
+
+  /**
+   * The record being written.
+   */
+  ByteBuffer record = ByteBuffer.allocate(256);
+
+  /**
+   * The checksum of the record being written.
+   */
+  CRC32C crc = new CRC32C();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a log over an open file with no records read yet.
+   *
+   * @param file
+   *   The file.
+   * @param groupSize
+   *   The number of changes between forcing the file to disk.
+   */
+  BlockLog(FileChannel file, int groupSize) {
+    this.channel = file;
+    this.group = groupSize;
+  } // BlockLog(FileChannel, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the offset just past the last record.
+   *
+   * @return the offset.
+   */
+  long end() {
+    return offset(this.count);
+  } // end()
+
+  /**
+   * Get the offset of a record.
+   *
+   * @param index
+   *   The index of the record, which may be one past the last.
+   *
+   * @return the offset of its first byte.
+   */
+  long offset(int index) {
+    return (index == 0) ? HEADER : this.ends[index - 1];
+  } // offset(int)
+
+  /**
+   * Note the end of a new record.
+   *
+   * @param end
+   *   The offset just past the record.
+   */
+  void recordEnd(long end) {
+    if (this.count == this.ends.length) {
+      this.ends = Arrays.copyOf(this.ends, this.count * 2);
+    } // if
+    this.ends[this.count++] = end;
+  } // recordEnd(long)
+
+  /**
+   * Note a change, forcing the file to disk if enough have built up.
+   *
+   * @throws IOException
+   *   If the file cannot be forced.
+   */
+  void changed() throws IOException {
+    if (++this.unsynced >= this.group) {
+      sync();
+    } // if
+  } // changed()
+
+  /**
+   * Make room in the record buffer.
+   *
+   * @param bytes
+   *   The number of bytes needed.
+   */
+  void reserve(int bytes) {
+    if (this.record.capacity() < bytes) {
+      this.record = ByteBuffer.allocate(Math.max(bytes, this.record.capacity() * 2));
+    } // if
+  } // reserve(int)
+
+  /**
+   * Read the contents of a record into a block.
+   *
+   * @param contents
+   *   The contents, the encoding of one block.
+   *
+   * @return the block.
+   *
+   * @throws IOException
+   *   If the contents do not encode a block.
+   */
+  static Block decode(byte[] contents) throws IOException {
+    ByteBuffer buf = ByteBuffer.wrap(contents);
+    try {
+      Block blk = BlockCodec.decode(buf);
+      if (buf.hasRemaining()) {
+        throw new IllegalArgumentException("Trailing bytes");
+      } // if
+      return blk;
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Malformed block record", e);
+    } // try-catch
+  } // decode(byte[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Open a log, creating it if need be, and hand each block in it to a
+   * consumer in order. A torn or corrupt record ends the log: it and
+   * everything after it are cut off.
+   *
+   * @param file
+   *   The file holding the log.
+   * @param groupSize
+   *   The number of changes between forcing the file to disk.
+   * @param replay
+   *   What to do with each block.
+   *
+   * @return the log, ready for more blocks.
+   *
+   * @throws IOException
+   *   If the file cannot be read or written, is not a block log, or
+   *   holds a block that the consumer rejects.
+   */
+  static BlockLog open(Path file, int groupSize, Consumer<Block> replay)
+      throws IOException {
+    if (groupSize < 1) {
+      throw new IllegalArgumentException("Group size must be positive");
+    } // if
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    BlockLog log = new BlockLog(channel, groupSize);
+    try {
+      if (channel.size() == 0) {
+        channel.write(ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).flip(), 0);
+        channel.force(true);
+      } else if (channel.size() < HEADER) {
+        throw new IOException(file + " is not a block log");
+      } else {
+        log.replay(file, replay);
+      } // if-else
+      channel.position(log.end());
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    } // try-catch
+    return log;
+  } // open(Path, int, Consumer<Block>)
+
+  /**
+   * Read the records of the log, cutting off a torn or corrupt tail.
+   *
+   * @param file
+   *   The file holding the log, for messages.
+   * @param replay
+   *   What to do with each block.
+   *
+   * @throws IOException
+   *   If the file cannot be read or written, is not a block log, or
+   *   holds a block that the consumer rejects.
+   */
+  void replay(Path file, Consumer<Block> replay) throws IOException {
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(this.channel.position(0)), 1 << 16));
+    if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+      throw new IOException(file + " is not a block log");
+    } // if
+    CRC32C check = new CRC32C();
+    while (true) {
+      long start = end();
+      byte[] contents;
+      int sum;
+      try {
+        int length = in.readInt();
+        sum = in.readInt();
+        if ((length < 0) || (length > MAX_RECORD)) {
+          break;
+        } // if
+        contents = new byte[length];
+        in.readFully(contents);
+      } catch (EOFException e) {
+        break;
+      } // try-catch
+      check.reset();
+      check.update(contents);
+      if ((int) check.getValue() != sum) {
+        break;
+      } // if
+      Block blk = decode(contents);
+      try {
+        replay.accept(blk);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Block " + blk.getNum() + " in " + file
+            + " does not fit the chain", e);
+      } // try-catch
+      recordEnd(start + RECORD_HEADER + contents.length);
+    } // while
+    if (this.channel.size() > end()) {
+      this.channel.truncate(end());
+      this.channel.force(true);
+    } // if
+  } // replay(Path, Consumer<Block>)
+
+  /**
+   * Add a block to the end of the log.
+   *
+   * @param blk
+   *   The block.
+   *
+   * @throws IOException
+   *   If the block cannot be written.
+   */
+  synchronized void append(Block blk) throws IOException {
+    int length = BlockCodec.length(blk);
+    reserve(RECORD_HEADER + length);
+    ByteBuffer buf = this.record.clear();
+    BlockCodec.encode(buf.putInt(length).putInt(0), blk);
+    this.crc.reset();
+    this.crc.update(buf.array(), RECORD_HEADER, length);
+    buf.putInt(4, (int) this.crc.getValue());
+    appendRecord(buf.flip());
+  } // append(Block)
+
+  /**
+   * Add a record, already checked, to the end of the log as it is.
+   *
+   * @param buf
+   *   The whole record, from its position to its limit.
+   *
+   * @throws IOException
+   *   If the record cannot be written.
+   */
+  synchronized void appendRecord(ByteBuffer buf) throws IOException {
+    long pos = end();
+    while (buf.hasRemaining()) {
+      pos += this.channel.write(buf, pos);
+    } // while
+    recordEnd(pos);
+    changed();
+  } // appendRecord(ByteBuffer)
+
+  /**
+   * Count the bytes in a run of records.
+   *
+   * @param from
+   *   The index of the first record.
+   * @param to
+   *   The index of the record after the last one.
+   *
+   * @return the number of bytes.
+   */
+  synchronized long length(int from, int to) {
+    return offset(to) - offset(from);
+  } // length(int, int)
+
+  /**
+   * Send a run of records, exactly as they are in the file, to a
+   * channel. The bytes go from the file to the channel without being
+   * copied through the heap where the platform allows.
+   *
+   * @param from
+   *   The index of the first record.
+   * @param to
+   *   The index of the record after the last one.
+   * @param target
+   *   The channel, which must be in blocking mode.
+   *
+   * @throws IOException
+   *   If the records cannot be sent.
+   * @throws IndexOutOfBoundsException
+   *   If the run is not within the log.
+   */
+  synchronized void transferTo(int from, int to, WritableByteChannel target)
+      throws IOException {
+    if ((from < 0) || (to > this.count) || (from > to)) {
+      throw new IndexOutOfBoundsException("Records " + from + " to " + to);
+    } // if
+    long pos = offset(from);
+    long end = offset(to);
+    while (pos < end) {
+      pos += this.channel.transferTo(pos, end - pos, target);
+    } // while
+  } // transferTo(int, int, WritableByteChannel)
+
+  /**
+   * Remove the last block from the log.
+   *
+   * @throws IOException
+   *   If the file cannot be truncated.
+   * @throws IllegalStateException
+   *   If the log is empty.
+   */
+  synchronized void removeLast() throws IOException {
+    if (this.count == 0) {
+      throw new IllegalStateException("The log is empty");
+    } // if
+    this.channel.truncate(offset(this.count - 1));
+    this.count--;
+    changed();
+  } // removeLast()
+
+  /**
+   * Count the blocks in the log.
+   *
+   * @return the number of blocks.
+   */
+  synchronized int size() {
+    return this.count;
+  } // size()
+
+  /**
+   * Force every change so far to disk.
+   *
+   * @throws IOException
+   *   If the file cannot be forced.
+   */
+  synchronized void sync() throws IOException {
+    if (this.unsynced > 0) {
+      this.channel.force(false);
+      this.unsynced = 0;
+    } // if
+  } // sync()
+
+  /**
+   * Force every change to disk and close the file.
+   *
+   * @throws IOException
+   *   If the file cannot be forced or closed.
+   */
+  public synchronized void close() throws IOException {
+    if (this.channel.isOpen()) {
+      try {
+        sync();
+      } finally {
+        this.channel.close();
+      } // try-finally
+    } // if
+  } // close()
+} // class BlockLog
@@ -0,0 +1,123 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * The blocks of a chain, in order, indexed by block number.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+interface BlockStore extends Iterable<Block>, Closeable {
+  /**
+   * Get the number of blocks stored.
+   *
+   * @return the number of blocks.
+   */
+  int size();
+
+  /**
+   * Get a block by number.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  Block get(int num);
+
+  /**
+   * Get the hash of a block by number. Stores that build blocks on
+   * demand can find the hash alone more cheaply.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the hash of the block.
+   *
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  default Hash hash(int num) {
+    return get(num).getHash();
+  } // hash(int)
+
+  /**
+   * Count the bytes in the encoding of a block (see BlockCodec). Stores
+   * that build blocks on demand can count them without building it.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the number of bytes.
+   *
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  default int encodedLength(int num) {
+    return BlockCodec.length(get(num));
+  } // encodedLength(int)
+
+  /**
+   * Encode a block (see BlockCodec). Stores that build blocks on demand
+   * can copy the encoding without building it.
+   *
+   * @param num
+   *   The number of the block.
+   * @param buf
+   *   The buffer to write to, which must be big-endian and have room.
+   *
+   * @return the buffer.
+   *
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  default ByteBuffer encode(int num, ByteBuffer buf) {
+    return BlockCodec.encode(buf, get(num));
+  } // encode(int, ByteBuffer)
+
+  /**
+   * Add a block after the last one.
+   *
+   * @param blk
+   *   The block to add.
+   */
+  void add(Block blk);
+
+  /**
+   * Remove the last block.
+   *
+   * @return the block removed.
+   *
+   * @throws IndexOutOfBoundsException if there are no blocks.
+   */
+  Block removeLast();
+
+  /**
+   * Get an iterator for the blocks, from first to last.
+   *
+   * @return an iterator for the blocks.
+   */
+  Iterator<Block> iterator();
+
+  /**
+   * Force the blocks to disk, if the store keeps them there.
+   *
+   * @throws IOException
+   *   If the blocks cannot be forced to disk.
+   */
+  default void sync() throws IOException {
+  } // sync()
+
+  /**
+   * Force the blocks to disk, if the store keeps them there, and release
+   * its files.
+   *
+   * @throws IOException
+   *   If the blocks cannot be forced or the files closed.
+   */
+  default void close() throws IOException {
+  } // close()
+} // interface BlockStore
@@ -0,0 +1,373 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Counters and timings for mining, appending, and checking a chain.
+ * Each is also reported as a JFR event, so a flight recording shows the
+ * same numbers.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class ChainMetrics {
+  // +---------------+-----------------------------------------------
+  // | Local classes |
+  // +---------------+
+
+  /**
+   * A histogram of durations in nanoseconds. Each power of two is split
+   * into eight buckets, so percentiles are within about 12% of the truth.
+   */
+  static class Histogram {
+    /**
+     * The number of buckets each power of two is split into, as bits.
+     */
+    static final int SUB_BITS = 3;
+
+    /**
+     * The counts in each bucket.
+     */
+    AtomicLongArray counts = new AtomicLongArray(64 << SUB_BITS);
+
+    /**
+     * The number of durations recorded.
+     */
+    LongAdder total = new LongAdder();
+
+    /**
+     * Find the bucket for a duration.
+     *
+     * @param nanos
+     *   The duration.
+     *
+     * @return the index of its bucket.
+     */
+    static int bucket(long nanos) {
+      long value = Math.max(nanos, 0);
+      int exp = 63 - Long.numberOfLeadingZeros(value);
+      if (exp <= SUB_BITS) {
+        return (int) value;
+      } // if
+      int mantissa = (int) (value >>> (exp - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+      return ((exp - SUB_BITS + 1) << SUB_BITS) + mantissa;
+    } // bucket(long)
+
+    /**
+     * Find the largest duration that falls in a bucket.
+     *
+     * @param index
+     *   The index of the bucket.
+     *
+     * @return the largest duration in that bucket.
+     */
+    static long upperBound(int index) {
+      if (index < (2 << SUB_BITS)) {
+        return index;
+      } // if
+      int exp = (index >>> SUB_BITS) + SUB_BITS - 1;
+      long mantissa = index & ((1 << SUB_BITS) - 1);
+      return (((1L << SUB_BITS) + mantissa + 1) << (exp - SUB_BITS)) - 1;
+    } // upperBound(int)
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos
+     *   The duration.
+     */
+    void record(long nanos) {
+      this.counts.incrementAndGet(bucket(nanos));
+      this.total.increment();
+    } // record(long)
+
+    /**
+     * Estimate a percentile of the durations recorded.
+     *
+     * @param percentile
+     *   The percentile, between 0 and 100.
+     *
+     * @return a duration at least as large as that percentile, or 0 if
+     *   nothing has been recorded.
+     */
+    long percentile(double percentile) {
+      long count = this.total.sum();
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int i = 0; i < this.counts.length(); i++) {
+        seen += this.counts.get(i);
+        if (seen >= rank) {
+          return upperBound(i);
+        } // if
+      } // for
+      return 0;
+    } // percentile(double)
+  } // class Histogram
+
+  /**
+   * The event reported when a block is mined.
+   */
+  @Name("edu.grinnell.csc207.blockchains.BlockMined")
+  @Label("Block Mined")
+  @Category("Blockchain")
+  static class MinedEvent extends Event {
+    /**
+     * The number of the block.
+     */
+    @Label("Block Number")
+    int blockNum;
+
+    /**
+     * The number of nonces tried.
+     */
+    @Label("Attempts")
+    long attempts;
+  } // class MinedEvent
+
+  /**
+   * The event reported when a block is appended (or fails to be).
+   */
+  @Name("edu.grinnell.csc207.blockchains.BlockAppended")
+  @Label("Block Appended")
+  @Category("Blockchain")
+  static class AppendEvent extends Event {
+    /**
+     * The number of the block.
+     */
+    @Label("Block Number")
+    int blockNum;
+
+    /**
+     * Whether the block was accepted.
+     */
+    @Label("Accepted")
+    boolean accepted;
+  } // class AppendEvent
+
+  /**
+   * The event reported when a chain is checked.
+   */
+  @Name("edu.grinnell.csc207.blockchains.ChainChecked")
+  @Label("Chain Checked")
+  @Category("Blockchain")
+  static class CheckEvent extends Event {
+    /**
+     * The number of blocks in the chain.
+     */
+    @Label("Blocks")
+    int blocks;
+
+    /**
+     * Whether the chain was correct.
+     */
+    @Label("Correct")
+    boolean correct;
+  } // class CheckEvent
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of nonces tried while mining.
+   */
+  LongAdder attempts = new LongAdder();
+
+  /**
+   * The time spent mining, in nanoseconds.
+   */
+  LongAdder miningNanos = new LongAdder();
+
+  /**
+   * How long each mined block took to find.
+   */
+  Histogram timeToBlock = new Histogram();
+
+  /**
+   * The number of blocks whose hash the validator rejected.
+   */
+  LongAdder rejections = new LongAdder();
+
+  /**
+   * How long each append took.
+   */
+  Histogram appendTime = new Histogram();
+
+  /**
+   * How long each check took.
+   */
+  Histogram checkTime = new Histogram();
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Record the end of a search.
+   *
+   * @param task
+   *   The search, which may have failed or been cancelled.
+   * @param nanos
+   *   How long it ran.
+   * @param event
+   *   The event begun when the search started.
+   */
+  void mined(MiningTask task, long nanos, MinedEvent event) {
+    this.attempts.add(task.getAttempts());
+    this.miningNanos.add(nanos);
+    if (!task.isCompletedExceptionally()) {
+      this.timeToBlock.record(nanos);
+      event.blockNum = task.getNum();
+      event.attempts = task.getAttempts();
+      event.commit();
+    } // if
+  } // mined(MiningTask, long, MinedEvent)
+
+  /**
+   * Record that the validator rejected a block.
+   */
+  void rejected() {
+    this.rejections.increment();
+  } // rejected()
+
+  /**
+   * Record the end of an append.
+   *
+   * @param blk
+   *   The block appended.
+   * @param nanos
+   *   How long the append took.
+   * @param accepted
+   *   Whether the block was accepted.
+   * @param event
+   *   The event begun when the append started.
+   */
+  void appended(Block blk, long nanos, boolean accepted, AppendEvent event) {
+    this.appendTime.record(nanos);
+    event.blockNum = blk.getNum();
+    event.accepted = accepted;
+    event.commit();
+  } // appended(Block, long, boolean, AppendEvent)
+
+  /**
+   * Record the end of a check.
+   *
+   * @param blocks
+   *   The number of blocks in the chain.
+   * @param nanos
+   *   How long the check took.
+   * @param correct
+   *   Whether the chain was correct.
+   * @param event
+   *   The event begun when the check started.
+   */
+  void checked(int blocks, long nanos, boolean correct, CheckEvent event) {
+    this.checkTime.record(nanos);
+    event.blocks = blocks;
+    event.correct = correct;
+    event.commit();
+  } // checked(int, long, boolean, CheckEvent)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of blocks mined.
+   *
+   * @return the number of blocks mined.
+   */
+  public long getBlocksMined() {
+    return this.timeToBlock.total.sum();
+  } // getBlocksMined()
+
+  /**
+   * Get the number of nonces tried while mining, including searches that
+   * were cancelled.
+   *
+   * @return the number of attempts.
+   */
+  public long getAttempts() {
+    return this.attempts.sum();
+  } // getAttempts()
+
+  /**
+   * Get the average number of nonces tried per second of mining.
+   *
+   * @return the hash rate, in hashes per second.
+   */
+  public double getHashRate() {
+    long nanos = this.miningNanos.sum();
+    return (nanos == 0) ? 0 : this.attempts.sum() * 1e9 / nanos;
+  } // getHashRate()
+
+  /**
+   * Estimate a percentile of the time taken to mine each block.
+   *
+   * @param percentile
+   *   The percentile, between 0 and 100.
+   *
+   * @return the time in nanoseconds, or 0 if no block has been mined.
+   */
+  public long getTimeToBlock(double percentile) {
+    return this.timeToBlock.percentile(percentile);
+  } // getTimeToBlock(double)
+
+  /**
+   * Get the number of blocks whose hash the validator rejected while
+   * appending or checking.
+   *
+   * @return the number of rejections.
+   */
+  public long getValidatorRejections() {
+    return this.rejections.sum();
+  } // getValidatorRejections()
+
+  /**
+   * Get the number of appends attempted.
+   *
+   * @return the number of appends.
+   */
+  public long getAppends() {
+    return this.appendTime.total.sum();
+  } // getAppends()
+
+  /**
+   * Estimate a percentile of the time taken by each append.
+   *
+   * @param percentile
+   *   The percentile, between 0 and 100.
+   *
+   * @return the time in nanoseconds, or 0 if nothing has been appended.
+   */
+  public long getAppendTime(double percentile) {
+    return this.appendTime.percentile(percentile);
+  } // getAppendTime(double)
+
+  /**
+   * Get the number of checks made.
+   *
+   * @return the number of checks.
+   */
+  public long getChecks() {
+    return this.checkTime.total.sum();
+  } // getChecks()
+
+  /**
+   * Estimate a percentile of the time taken by each check.
+   *
+   * @param percentile
+   *   The percentile, between 0 and 100.
+   *
+   * @return the time in nanoseconds, or 0 if nothing has been checked.
+   */
+  public long getCheckTime(double percentile) {
+    return this.checkTime.percentile(percentile);
+  } // getCheckTime(double)
+} // class ChainMetrics
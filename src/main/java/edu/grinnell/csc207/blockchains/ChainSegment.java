@@ -0,0 +1,348 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * A run of consecutive blocks on its way between two chains, such as
+ * from a primary to a replica or to backup storage. A segment is a
+ * header, giving the number of its first block, how many blocks and
+ * bytes follow, the hash of the block before it, and the hash of its
+ * last block, and then the blocks as records in the format of a
+ * BlockLog (length, CRC-32C, encoding), so that a chain kept in a log
+ * sends its records straight from the file.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class ChainSegment {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The first int in every segment.
+   */
+  static final int MAGIC = 0x53656773;
+
+  /**
+   * The version of the segment format.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The number of bytes in the fixed part of the header.
+   */
+  static final int HEADER = 24;
+
+  /**
+   * The number of bytes encoded at a time when records are not sent
+   * from a file.
+   */
+  static final int BUFFER = 1 << 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The channel the records are read from.
+   */
+  ReadableByteChannel source;
+
+  /**
+   * The number of the first block.
+   */
+  int first;
+
+  /**
+   * The number of blocks.
+   */
+  int count;
+
+  /**
+   * The number of bytes of records not yet read.
+   */
+  long remaining;
+
+  /**
+   * The hash of the block before the first.
+   */
+  Hash prev;
+
+  /**
+   * The hash of the last block.
+   */
+  Hash last;
+
+  /**
+   * The number of records read.
+   */
+  int read;
+
+  /**
+   * The record just read.
+   */
+  ByteBuffer record = ByteBuffer.allocate(256);
+
+  /**
+   * The checksum of the record just read.
+   */
+  CRC32C crc = new CRC32C();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a segment to be read from a channel, its header not yet
+   * read.
+   *
+   * @param in
+   *   The channel.
+   */
+  ChainSegment(ReadableByteChannel in) {
+    this.source = in;
+  } // ChainSegment(ReadableByteChannel)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Write all of a buffer to a channel.
+   *
+   * @param out
+   *   The channel, which must be in blocking mode.
+   * @param buf
+   *   The buffer, from its position to its limit.
+   *
+   * @throws IOException
+   *   If the buffer cannot be written.
+   */
+  static void writeFully(WritableByteChannel out, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      out.write(buf);
+    } // while
+  } // writeFully(WritableByteChannel, ByteBuffer)
+
+  /**
+   * Fill a buffer from a channel.
+   *
+   * @param in
+   *   The channel, which must be in blocking mode.
+   * @param buf
+   *   The buffer, from its position to its limit.
+   *
+   * @throws IOException
+   *   If the channel ends first or cannot be read.
+   */
+  static void readFully(ReadableByteChannel in, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      if (in.read(buf) < 0) {
+        throw new EOFException("Segment ends early");
+      } // if
+    } // while
+  } // readFully(ReadableByteChannel, ByteBuffer)
+
+  /**
+   * Encode the header of a segment.
+   *
+   * @param from
+   *   The number of the first block.
+   * @param blocks
+   *   The number of blocks.
+   * @param bytes
+   *   The number of bytes of records.
+   * @param before
+   *   The hash of the block before the first.
+   * @param end
+   *   The hash of the last block, or of the block before the first if
+   *   there are no blocks.
+   *
+   * @return the header, ready to write.
+   */
+  static ByteBuffer header(int from, int blocks, long bytes, Hash before, Hash end) {
+    ByteBuffer buf = ByteBuffer.allocate(HEADER + 2 * Integer.BYTES + before.length()
+        + end.length());
+    buf.putInt(MAGIC).putInt(VERSION).putInt(from).putInt(blocks).putLong(bytes);
+    before.writeTo(buf.putInt(before.length()));
+    end.writeTo(buf.putInt(end.length()));
+    return buf.flip();
+  } // header(int, int, long, Hash, Hash)
+
+  /**
+   * Read a length and that many bytes of hash.
+   *
+   * @return the hash.
+   *
+   * @throws IOException
+   *   If the hash cannot be read.
+   */
+  Hash readHash() throws IOException {
+    ByteBuffer len = ByteBuffer.allocate(Integer.BYTES);
+    readFully(this.source, len);
+    int length = len.getInt(0);
+    if ((length < 0) || (length > BlockLog.MAX_RECORD)) {
+      throw new IOException("Bad hash length " + length);
+    } // if
+    ByteBuffer bytes = ByteBuffer.allocate(length);
+    readFully(this.source, bytes);
+    return new Hash(bytes.array());
+  } // readHash()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Send the records of a run of blocks kept in a log, straight from
+   * the file.
+   *
+   * @param log
+   *   The log.
+   * @param from
+   *   The number of the first block.
+   * @param to
+   *   The number of the block after the last one.
+   * @param before
+   *   The hash of the block before the first.
+   * @param end
+   *   The hash of the last block, or of the block before the first if
+   *   there are no blocks.
+   * @param out
+   *   Where to send them, in blocking mode.
+   *
+   * @throws IOException
+   *   If they cannot be sent.
+   */
+  static void send(BlockLog log, int from, int to, Hash before, Hash end,
+      WritableByteChannel out) throws IOException {
+    writeFully(out, header(from, to - from, log.length(from, to), before, end));
+    log.transferTo(from, to, out);
+  } // send(BlockLog, int, int, Hash, Hash, WritableByteChannel)
+
+  /**
+   * Send the records of a run of blocks kept in a store, encoding them
+   * into a direct buffer a batch at a time. A mapped store copies each
+   * encoding straight from its mapping, so no blocks are built.
+   *
+   * @param store
+   *   The blocks.
+   * @param from
+   *   The number of the first block.
+   * @param to
+   *   The number of the block after the last one.
+   * @param before
+   *   The hash of the block before the first.
+   * @param end
+   *   The hash of the last block, or of the block before the first if
+   *   there are no blocks.
+   * @param out
+   *   Where to send them, in blocking mode.
+   *
+   * @throws IOException
+   *   If they cannot be sent.
+   */
+  static void send(BlockStore store, int from, int to, Hash before, Hash end,
+      WritableByteChannel out) throws IOException {
+    long bytes = 0;
+    for (int num = from; num < to; num++) {
+      bytes += BlockLog.RECORD_HEADER + store.encodedLength(num);
+    } // for
+    writeFully(out, header(from, to - from, bytes, before, end));
+    ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER);
+    CRC32C sum = new CRC32C();
+    for (int num = from; num < to; num++) {
+      int length = store.encodedLength(num);
+      if (buf.remaining() < BlockLog.RECORD_HEADER + length) {
+        writeFully(out, buf.flip());
+        buf.clear();
+        if (buf.capacity() < BlockLog.RECORD_HEADER + length) {
+          buf = ByteBuffer.allocateDirect(BlockLog.RECORD_HEADER + length);
+        } // if
+      } // if
+      int start = buf.position();
+      store.encode(num, buf.putInt(length).putInt(0));
+      sum.reset();
+      sum.update(buf.duplicate().position(start + BlockLog.RECORD_HEADER).limit(buf.position()));
+      buf.putInt(start + Integer.BYTES, (int) sum.getValue());
+    } // for
+    writeFully(out, buf.flip());
+  } // send(BlockStore, int, int, Hash, Hash, WritableByteChannel)
+
+  /**
+   * Start reading a segment from a channel.
+   *
+   * @param in
+   *   The channel, in blocking mode.
+   *
+   * @return the segment, with its header read.
+   *
+   * @throws IOException
+   *   If the channel cannot be read or does not start with a segment.
+   */
+  static ChainSegment open(ReadableByteChannel in) throws IOException {
+    ChainSegment segment = new ChainSegment(in);
+    ByteBuffer buf = ByteBuffer.allocate(HEADER);
+    readFully(in, buf);
+    buf.flip();
+    if ((buf.getInt() != MAGIC) || (buf.getInt() != VERSION)) {
+      throw new IOException("Not a segment of blocks");
+    } // if
+    segment.first = buf.getInt();
+    segment.count = buf.getInt();
+    segment.remaining = buf.getLong();
+    if ((segment.first < 0) || (segment.count < 0) || (segment.remaining < 0)) {
+      throw new IOException("Bad segment header");
+    } // if
+    segment.prev = segment.readHash();
+    segment.last = segment.readHash();
+    return segment;
+  } // open(ReadableByteChannel)
+
+  /**
+   * Read the next record and check its checksum.
+   *
+   * @return a buffer holding the whole record from position 0 to its
+   *   limit, good until the next call, or null once every record has
+   *   been read.
+   *
+   * @throws IOException
+   *   If the record cannot be read, is longer than the segment, or does
+   *   not match its checksum.
+   */
+  ByteBuffer next() throws IOException {
+    if (this.read == this.count) {
+      if (this.remaining != 0) {
+        throw new IOException("Segment has " + this.remaining + " bytes left over");
+      } // if
+      return null;
+    } // if
+    ByteBuffer head = this.record.clear().limit(BlockLog.RECORD_HEADER);
+    readFully(this.source, head);
+    int length = head.getInt(0);
+    if ((length < 0) || (length > BlockLog.MAX_RECORD)
+        || (BlockLog.RECORD_HEADER + length > this.remaining)) {
+      throw new IOException("Bad record length " + length);
+    } // if
+    if (this.record.capacity() < BlockLog.RECORD_HEADER + length) {
+      this.record = ByteBuffer.allocate(Math.max(BlockLog.RECORD_HEADER + length,
+          this.record.capacity() * 2)).put(head.flip());
+    } // if
+    ByteBuffer buf = this.record.limit(BlockLog.RECORD_HEADER + length);
+    readFully(this.source, buf);
+    this.crc.reset();
+    this.crc.update(buf.array(), BlockLog.RECORD_HEADER, length);
+    if ((int) this.crc.getValue() != buf.getInt(Integer.BYTES)) {
+      throw new IOException("Record " + (this.first + this.read) + " is corrupt");
+    } // if
+    this.remaining -= buf.limit();
+    this.read++;
+    return buf.flip();
+  } // next()
+} // class ChainSegment
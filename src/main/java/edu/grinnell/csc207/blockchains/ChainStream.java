@@ -0,0 +1,527 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Streams of blocks for moving chains between machines, in a binary
+ * format and a newline-delimited JSON format. Blocks are written and
+ * read one at a time, so a stream of any length takes no more memory
+ * than its largest block.
+ *
+ * The binary format is a magic number and a version, then one record
+ * per block, each its length and the block's encoding (see BlockCodec),
+ * then a length of -1. The text format is one JSON object per line,
+ *
+ *   {"num":1,"source":"a","target":"b","amount":5,"prevHash":"00ab..",
+ *    "nonce":42,"hash":"00cd.."}
+ *
+ * with hashes in hexadecimal. A block read from either format takes its
+ * hash from its contents, and a text block whose hash field disagrees is
+ * rejected.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class ChainStream {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The first int in every binary stream, unlike those of the files
+   * of blocks, so that neither is mistaken for the other.
+   */
+  static final int MAGIC = 0x43686e73;
+
+  /**
+   * The version of the binary format.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The length that ends a binary stream.
+   */
+  static final int END = -1;
+
+  /**
+   * The number of bytes buffered between the streams and the caller.
+   */
+  static final int BUFFER = 1 << 16;
+
+  /**
+   * The most blocks read before their transactions are replayed into
+   * the ledger together.
+   */
+  static final int BATCH = 1024;
+
+  // +---------------+-----------------------------------------------
+  // | Local classes |
+  // +---------------+
+
+  /**
+   * Blocks read from a stream, one at a time.
+   */
+  interface Input {
+    /**
+     * Read the next block.
+     *
+     * @return the block, or null at the end of the stream.
+     *
+     * @throws IOException
+     *   If the stream cannot be read or is malformed.
+     */
+    Block next() throws IOException;
+  } // interface Input
+
+  /**
+   * The reader for one line of JSON, which holds a single flat object
+   * of strings and integers.
+   */
+  static class JsonLine {
+    /**
+     * The line.
+     */
+    String text;
+
+    /**
+     * The index of the next character to read.
+     */
+    int pos;
+
+    /**
+     * Start reading a line.
+     *
+     * @param line
+     *   The line.
+     */
+    JsonLine(String line) {
+      this.text = line;
+    } // JsonLine(String)
+
+    /**
+     * Skip whitespace.
+     */
+    void skip() {
+      while ((this.pos < this.text.length())
+          && Character.isWhitespace(this.text.charAt(this.pos))) {
+        this.pos++;
+      } // while
+    } // skip()
+
+    /**
+     * Read a character if it is next.
+     *
+     * @param ch
+     *   The character.
+     *
+     * @return true if it was next and has been read.
+     */
+    boolean accept(char ch) {
+      skip();
+      if ((this.pos < this.text.length()) && (this.text.charAt(this.pos) == ch)) {
+        this.pos++;
+        return true;
+      } // if
+      return false;
+    } // accept(char)
+
+    /**
+     * Read a character that must be next.
+     *
+     * @param ch
+     *   The character.
+     *
+     * @throws IllegalArgumentException
+     *   If it is not next.
+     */
+    void expect(char ch) {
+      if (!accept(ch)) {
+        throw new IllegalArgumentException("Expected " + ch + " at " + this.pos);
+      } // if
+    } // expect(char)
+
+    /**
+     * Make sure nothing but whitespace is left.
+     *
+     * @throws IllegalArgumentException
+     *   If something is.
+     */
+    void end() {
+      skip();
+      if (this.pos != this.text.length()) {
+        throw new IllegalArgumentException("Trailing characters at " + this.pos);
+      } // if
+    } // end()
+
+    /**
+     * Read the character after a backslash in a string.
+     *
+     * @return the character it stands for.
+     *
+     * @throws IllegalArgumentException
+     *   If it is not a valid escape.
+     */
+    char escape() {
+      if (this.pos >= this.text.length()) {
+        throw new IllegalArgumentException("Unterminated string");
+      } // if
+      char esc = this.text.charAt(this.pos++);
+      switch (esc) {
+        case 'b':
+          return '\b';
+        case 'f':
+          return '\f';
+        case 'n':
+          return '\n';
+        case 'r':
+          return '\r';
+        case 't':
+          return '\t';
+        case 'u':
+          if (this.pos + 4 > this.text.length()) {
+            throw new IllegalArgumentException("Short escape");
+          } // if
+          this.pos += 4;
+          return (char) Integer.parseInt(this.text.substring(this.pos - 4, this.pos), 16);
+        case '"':
+        case '\\':
+        case '/':
+          return esc;
+        default:
+          throw new IllegalArgumentException("Bad escape \\" + esc);
+      } // switch
+    } // escape()
+
+    /**
+     * Read a string.
+     *
+     * @return the string.
+     *
+     * @throws IllegalArgumentException
+     *   If a string is not next.
+     */
+    String string() {
+      expect('"');
+      StringBuilder str = new StringBuilder();
+      while (true) {
+        if (this.pos >= this.text.length()) {
+          throw new IllegalArgumentException("Unterminated string");
+        } // if
+        char ch = this.text.charAt(this.pos++);
+        if (ch == '"') {
+          return str.toString();
+        } else if (ch == '\\') {
+          str.append(escape());
+        } else {
+          str.append(ch);
+        } // if-else
+      } // while
+    } // string()
+
+    /**
+     * Read an integer.
+     *
+     * @return the integer.
+     *
+     * @throws IllegalArgumentException
+     *   If an integer is not next.
+     */
+    long number() {
+      skip();
+      int start = this.pos;
+      if ((this.pos < this.text.length()) && (this.text.charAt(this.pos) == '-')) {
+        this.pos++;
+      } // if
+      while ((this.pos < this.text.length()) && Character.isDigit(this.text.charAt(this.pos))) {
+        this.pos++;
+      } // while
+      return Long.parseLong(this.text.substring(start, this.pos));
+    } // number()
+  } // class JsonLine
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Write a string as a JSON string.
+   *
+   * @param out
+   *   Where to write it.
+   * @param str
+   *   The string.
+   *
+   * @throws IOException
+   *   If it cannot be written.
+   */
+  static void quote(Writer out, String str) throws IOException {
+    out.write('"');
+    for (int i = 0; i < str.length(); i++) {
+      char ch = str.charAt(i);
+      if ((ch == '"') || (ch == '\\')) {
+        out.write('\\');
+        out.write(ch);
+      } else if (ch < 0x20) {
+        out.write(String.format("\\u%04x", (int) ch));
+      } else {
+        out.write(ch);
+      } // if-else
+    } // for
+    out.write('"');
+  } // quote(Writer, String)
+
+  /**
+   * Parse a hash written in hexadecimal.
+   *
+   * @param hex
+   *   The digits.
+   *
+   * @return the hash.
+   *
+   * @throws IllegalArgumentException
+   *   If the string is not an even number of hexadecimal digits.
+   */
+  static Hash parseHash(String hex) {
+    if (hex.length() % 2 != 0) {
+      throw new IllegalArgumentException("Odd number of digits in " + hex);
+    } // if
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      int high = Character.digit(hex.charAt(2 * i), 16);
+      int low = Character.digit(hex.charAt(2 * i + 1), 16);
+      if ((high < 0) || (low < 0)) {
+        throw new IllegalArgumentException("Not hexadecimal: " + hex);
+      } // if
+      bytes[i] = (byte) ((high << 4) | low);
+    } // for
+    return new Hash(bytes);
+  } // parseHash(String)
+
+  /**
+   * Parse one line of the text format.
+   *
+   * @param line
+   *   The line.
+   *
+   * @return the block it describes.
+   *
+   * @throws IllegalArgumentException
+   *   If the line does not describe a block.
+   */
+  static Block parseLine(String line) {
+    JsonLine json = new JsonLine(line);
+    String source = null;
+    String target = null;
+    String prevHash = null;
+    String hash = null;
+    Long num = null;
+    Long amount = null;
+    Long nonce = null;
+    json.expect('{');
+    do {
+      String key = json.string();
+      json.expect(':');
+      if (key.equals("num")) {
+        num = json.number();
+      } else if (key.equals("source")) {
+        source = json.string();
+      } else if (key.equals("target")) {
+        target = json.string();
+      } else if (key.equals("amount")) {
+        amount = json.number();
+      } else if (key.equals("prevHash")) {
+        prevHash = json.string();
+      } else if (key.equals("nonce")) {
+        nonce = json.number();
+      } else if (key.equals("hash")) {
+        hash = json.string();
+      } else {
+        throw new IllegalArgumentException("Unknown field " + key);
+      } // if-else
+    } while (json.accept(','));
+    json.expect('}');
+    json.end();
+    if ((num == null) || (source == null) || (target == null) || (amount == null)
+        || (prevHash == null) || (nonce == null)) {
+      throw new IllegalArgumentException("Missing field");
+    } // if
+    if ((num != num.intValue()) || (amount != amount.intValue())) {
+      throw new IllegalArgumentException("Number out of range");
+    } // if
+    Block blk = new Block(num.intValue(), new Transaction(source, target, amount.intValue()),
+        parseHash(prevHash), nonce);
+    if ((hash != null) && !parseHash(hash).equals(blk.getHash())) {
+      throw new IllegalArgumentException("Hash does not match the block");
+    } // if
+    return blk;
+  } // parseLine(String)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Write blocks in the binary format.
+   *
+   * @param blocks
+   *   The blocks.
+   * @param stream
+   *   Where to write them. It is flushed but not closed.
+   *
+   * @return the number of blocks written.
+   *
+   * @throws IOException
+   *   If they cannot be written.
+   */
+  static int writeBinary(Iterator<Block> blocks, OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    ByteBuffer buf = ByteBuffer.allocate(256);
+    int count = 0;
+    while (blocks.hasNext()) {
+      Block blk = blocks.next();
+      int length = BlockCodec.length(blk);
+      if (buf.capacity() < length) {
+        buf = ByteBuffer.allocate(Math.max(length, buf.capacity() * 2));
+      } // if
+      BlockCodec.encode(buf.clear(), blk);
+      out.writeInt(length);
+      out.write(buf.array(), 0, length);
+      count++;
+    } // while
+    out.writeInt(END);
+    out.flush();
+    return count;
+  } // writeBinary(Iterator<Block>, OutputStream)
+
+  /**
+   * Write blocks in the text format.
+   *
+   * @param blocks
+   *   The blocks.
+   * @param writer
+   *   Where to write them. It is flushed but not closed.
+   *
+   * @return the number of blocks written.
+   *
+   * @throws IOException
+   *   If they cannot be written.
+   */
+  static int writeText(Iterator<Block> blocks, Writer writer) throws IOException {
+    Writer out = new BufferedWriter(writer, BUFFER);
+    int count = 0;
+    while (blocks.hasNext()) {
+      Block blk = blocks.next();
+      Transaction t = blk.getTransaction();
+      out.write("{\"num\":" + blk.getNum() + ",\"source\":");
+      quote(out, t.getSource());
+      out.write(",\"target\":");
+      quote(out, t.getTarget());
+      out.write(",\"amount\":" + t.getAmount() + ",\"prevHash\":\"" + blk.getPrevHash()
+          + "\",\"nonce\":" + blk.getNonce() + ",\"hash\":\"" + blk.getHash() + "\"}\n");
+      count++;
+    } // while
+    out.flush();
+    return count;
+  } // writeText(Iterator<Block>, Writer)
+
+  /**
+   * Read blocks in the binary format.
+   *
+   * @param stream
+   *   Where to read them from. It is read through a buffer, so bytes
+   *   after the blocks may be read too.
+   *
+   * @return the blocks.
+   *
+   * @throws IOException
+   *   If the stream cannot be read or does not start like the format.
+   */
+  static Input readBinary(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER));
+    if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+      throw new IOException("Not a block stream");
+    } // if
+    return new Input() {
+      byte[] record = new byte[256];
+      boolean done = false;
+
+      public Block next() throws IOException {
+        if (this.done) {
+          return null;
+        } // if
+        int length;
+        try {
+          length = in.readInt();
+          if (length == END) {
+            this.done = true;
+            return null;
+          } else if ((length < 0) || (length > BlockLog.MAX_RECORD)) {
+            throw new IOException("Bad record length " + length);
+          } // if-else
+          if (this.record.length < length) {
+            this.record = new byte[Math.max(length, this.record.length * 2)];
+          } // if
+          in.readFully(this.record, 0, length);
+        } catch (EOFException e) {
+          throw new IOException("Block stream ends early", e);
+        } // try-catch
+        ByteBuffer buf = ByteBuffer.wrap(this.record, 0, length);
+        try {
+          Block blk = BlockCodec.decode(buf);
+          if (buf.hasRemaining()) {
+            throw new IllegalArgumentException("Trailing bytes");
+          } // if
+          return blk;
+        } catch (IllegalArgumentException e) {
+          throw new IOException("Malformed block record", e);
+        } // try-catch
+      } // next()
+    };
+  } // readBinary(InputStream)
+
+  /**
+   * Read blocks in the text format. Blank lines are skipped.
+   *
+   * @param reader
+   *   Where to read them from.
+   *
+   * @return the blocks.
+   */
+  static Input readText(Reader reader) {
+    BufferedReader in = new BufferedReader(reader, BUFFER);
+    return new Input() {
+      int lines = 0;
+
+      public Block next() throws IOException {
+        String line;
+        do {
+          line = in.readLine();
+          this.lines++;
+          if (line == null) {
+            return null;
+          } // if
+        } while (line.isBlank());
+        try {
+          return parseLine(line);
+        } catch (IllegalArgumentException e) {
+          throw new IOException("Line " + this.lines + ": " + e.getMessage(), e);
+        } // try-catch
+      } // next()
+    };
+  } // readText(Reader)
+} // class ChainStream
@@ -0,0 +1,223 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checks the hashes and previous-hash links of a run of blocks, splitting
+ * the run into chunks that are checked on the common fork/join pool.
+ * Balances are not checked here, since each depends on the blocks before
+ * it.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class ChainVerifier {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default number of blocks checked by one task.
+   */
+  static final int CHUNK = 1024;
+
+  // +---------------+-----------------------------------------------
+  // | Local classes |
+  // +---------------+
+
+  /**
+   * A block that failed, and why.
+   */
+  static class Failure {
+    /**
+     * The number of the block.
+     */
+    int num;
+
+    /**
+     * What is wrong with it.
+     */
+    String message;
+
+    /**
+     * Whether the validator rejected its hash.
+     */
+    boolean rejected;
+
+    /**
+     * Record a failure.
+     *
+     * @param blockNum
+     *   The number of the block.
+     * @param why
+     *   What is wrong with it.
+     * @param byValidator
+     *   Whether the validator rejected its hash.
+     */
+    Failure(int blockNum, String why, boolean byValidator) {
+      this.num = blockNum;
+      this.message = why;
+      this.rejected = byValidator;
+    } // Failure(int, String, boolean)
+  } // class Failure
+
+  /**
+   * The task that checks the blocks in a range.
+   */
+  class Chunk extends RecursiveTask<Failure> {
+    /**
+     * The version of the serialized form, which tasks inherit.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of the first block to check.
+     */
+    int from;
+
+    /**
+     * The number of the block after the last one to check.
+     */
+    int to;
+
+    /**
+     * Create a task for a range of blocks.
+     *
+     * @param low
+     *   The number of the first block to check.
+     * @param high
+     *   The number of the block after the last one to check.
+     */
+    Chunk(int low, int high) {
+      this.from = low;
+      this.to = high;
+    } // Chunk(int, int)
+
+    /**
+     * Check the range, splitting it if it is large.
+     *
+     * @return the lowest failing block in the range, or null if there
+     *   is none.
+     */
+    @Override
+    protected Failure compute() {
+      if (this.to - this.from <= chunk) {
+        return check(this.from, this.to);
+      } // if
+      int mid = (this.from + this.to) >>> 1;
+      Chunk left = new Chunk(this.from, mid);
+      left.fork();
+      Failure right = new Chunk(mid, this.to).compute();
+      Failure earlier = left.join();
+      return (earlier != null) ? earlier : right;
+    } // compute()
+  } // class Chunk
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The blocks to check.
+   */
+  BlockStore store;
+
+  /**
+   * The validator for the hashes.
+   */
+  HashValidator valid;
+
+  /**
+   * The number of blocks checked by one task.
+   */
+  int chunk;
+
+  /**
+   * The hash expected in the previous-hash field of the first block
+   * checked.
+   */
+  Hash start;
+
+  /**
+   * The number of the first block checked.
+   */
+  int first;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a verifier for some blocks.
+   *
+   * @param blocks
+   *   The blocks to check.
+   * @param check
+   *   The validator for the hashes.
+   * @param chunkSize
+   *   The number of blocks checked by one task.
+   */
+  ChainVerifier(BlockStore blocks, HashValidator check, int chunkSize) {
+    this.store = blocks;
+    this.valid = check;
+    this.chunk = chunkSize;
+  } // ChainVerifier(BlockStore, HashValidator, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Check a range of blocks in this thread.
+   *
+   * @param from
+   *   The number of the first block to check.
+   * @param to
+   *   The number of the block after the last one to check.
+   *
+   * @return the lowest failing block in the range, or null if there is
+   *   none.
+   */
+  Failure check(int from, int to) {
+    Hash prev = (from == this.first) ? this.start : this.store.hash(from - 1);
+    for (int i = from; i < to; i++) {
+      Block curr = this.store.get(i);
+      if (!curr.getPrevHash().equals(prev)) {
+        return new Failure(i, "Previous hash is invalid", false);
+      } // if
+      prev = curr.getHash();
+      if (!curr.hashMatches()) {
+        return new Failure(i, "Hash is not valid for its contents", false);
+      } // if
+      if (!this.valid.isValid(curr.getHash())) {
+        return new Failure(i, "Hash is not valid", true);
+      } // if
+      if (curr.getTransaction().getAmount() < 0) {
+        return new Failure(i, "Invalid transaction amount", false);
+      } // if
+    } // for
+    return null;
+  } // check(int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Check the hashes, previous hashes, and amounts of a run of blocks.
+   *
+   * @param from
+   *   The number of the first block to check.
+   * @param to
+   *   The number of the block after the last one to check.
+   * @param prev
+   *   The hash expected in the previous-hash field of the first block.
+   *
+   * @return the lowest failing block, or null if every block passes.
+   */
+  Failure verify(int from, int to, Hash prev) {
+    this.first = from;
+    this.start = prev;
+    return new Chunk(from, to).invoke();
+  } // verify(int, int, Hash)
+} // class ChainVerifier
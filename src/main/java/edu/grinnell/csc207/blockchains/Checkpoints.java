@@ -0,0 +1,150 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Balances recorded each time the chain reaches a multiple of some
+ * number of blocks, so that past balances can be found with a short
+ * replay from the nearest checkpoint. Each checkpoint records only the
+ * users whose balances changed since the one before, so the memory
+ * taken grows with the blocks rather than with users times blocks, and
+ * a balance at a checkpoint is found by searching back to the last
+ * checkpoint that recorded the user. A shorter interval makes replays
+ * shorter and takes more memory.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class Checkpoints {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default number of blocks between checkpoints.
+   */
+  static final int INTERVAL = 1024;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks between checkpoints.
+   */
+  int interval;
+
+  /**
+   * The IDs of the users whose balances changed before each checkpoint,
+   * after the first interval blocks, the first 2 * interval blocks, and
+   * so on, in increasing order.
+   */
+  ArrayList<int[]> ids = new ArrayList<int[]>();
+
+  /**
+   * The balances of those users at each checkpoint, with 0 for users who
+   * no longer take part in a transaction.
+   */
+  ArrayList<int[]> values = new ArrayList<int[]>();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty set of checkpoints.
+   *
+   * @param every
+   *   The number of blocks between checkpoints.
+   *
+   * @throws IllegalArgumentException if every is less than 1.
+   */
+  Checkpoints(int every) {
+    if (every < 1) {
+      throw new IllegalArgumentException("Checkpoint interval must be positive");
+    } // if
+    this.interval = every;
+  } // Checkpoints(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Note that a block was added, taking a checkpoint if it completes an
+   * interval.
+   *
+   * @param num
+   *   The number of the block.
+   * @param ledger
+   *   The balances after the block.
+   */
+  void added(int num, Ledger ledger) {
+    if ((num + 1) % this.interval == 0) {
+      int[] changed = ledger.takeChanged();
+      int[] balances = new int[changed.length];
+      for (int i = 0; i < changed.length; i++) {
+        balances[i] = ledger.isKnown(changed[i]) ? ledger.balances[changed[i]] : 0;
+      } // for
+      this.ids.add(changed);
+      this.values.add(balances);
+    } // if
+  } // added(int, Ledger)
+
+  /**
+   * Note that the last block was removed, dropping its checkpoint. The
+   * users that checkpoint recorded are noted as changed again, so that
+   * the next checkpoint records them.
+   *
+   * @param num
+   *   The number of the block.
+   * @param ledger
+   *   The balances after the block was undone.
+   */
+  void removed(int num, Ledger ledger) {
+    if ((num + 1) % this.interval == 0) {
+      this.values.remove(this.values.size() - 1);
+      for (int id : this.ids.remove(this.ids.size() - 1)) {
+        ledger.touch(id);
+      } // for
+    } // if
+  } // removed(int, Ledger)
+
+  /**
+   * Find the number of the first block after the last checkpoint at or
+   * before a block.
+   *
+   * @param height
+   *   The number of the block.
+   *
+   * @return the number of the first block not covered by that
+   *   checkpoint (0 if there is none).
+   */
+  int start(int height) {
+    return ((height + 1) / this.interval) * this.interval;
+  } // start(int)
+
+  /**
+   * Get a user's balance at the last checkpoint at or before a block.
+   *
+   * @param id
+   *   The ID of the user, or UserDictionary.NONE.
+   * @param height
+   *   The number of the block.
+   *
+   * @return the balance.
+   */
+  int balance(int id, int height) {
+    if (id == UserDictionary.NONE) {
+      return 0;
+    } // if
+    for (int c = (height + 1) / this.interval - 1; c >= 0; c--) {
+      int i = Arrays.binarySearch(this.ids.get(c), id);
+      if (i >= 0) {
+        return this.values.get(c)[i];
+      } // if
+    } // for
+    return 0;
+  } // balance(int, int)
+} // class Checkpoints
@@ -1,23 +1,76 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
- * Encapsulated hashes.
+ * Encapsulated hashes. SHA-256 hashes are kept as four longs, so they
+ * are compact and cheap to compare; hashes of any other length (such as
+ * the empty hash before the first block) are kept as bytes.
  *
  * @author Sarah Deschamps
  * @author Jana Vadillo
  * @author Samuel A. Rebelsky
  */
 public class Hash {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes in a hash kept as longs.
+   */
+  static final int WIDE = 32;
+
+  /**
+   * Reads and writes big-endian longs in byte arrays.
+   */
+  static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  /**
+   * The hex digits.
+   */
+  static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
 
   /**
-   * The array of bytes.
+   * The views handed to validators on each thread.
+   */
+  static final ThreadLocal<Hash> VIEWS =
+      ThreadLocal.withInitial(() -> new Hash(new byte[] {}));
+
+  /**
+   * The bytes of the hash, or null if the hash is kept in the words.
    */
   byte[] bytes;
+
+  /**
+   * The first eight bytes of a 32-byte hash.
+   */
+  long w0;
+
+  /**
+   * The second eight bytes of a 32-byte hash.
+   */
+  long w1;
+
+  /**
+   * The third eight bytes of a 32-byte hash.
+   */
+  long w2;
+
+  /**
+   * The last eight bytes of a 32-byte hash.
+   */
+  long w3;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -29,9 +82,186 @@ public class Hash {
    *   The data to copy into the hash.
    */
   public Hash(byte[] data) {
-    this.bytes = Arrays.copyOf(data, data.length);
+    set(data, 0, data.length);
   } // Hash(byte[])
 
+  /**
+   * Create a 32-byte hash from its words.
+   *
+   * @param word0
+   *   The first eight bytes.
+   * @param word1
+   *   The second eight bytes.
+   * @param word2
+   *   The third eight bytes.
+   * @param word3
+   *   The last eight bytes.
+   */
+  Hash(long word0, long word1, long word2, long word3) {
+    this.w0 = word0;
+    this.w1 = word1;
+    this.w2 = word2;
+    this.w3 = word3;
+  } // Hash(long, long, long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Set the contents of this hash.
+   *
+   * @param data
+   *   The array holding the new contents.
+   * @param offset
+   *   The index of the first byte.
+   * @param len
+   *   The number of bytes.
+   */
+  void set(byte[] data, int offset, int len) {
+    if (len == WIDE) {
+      this.bytes = null;
+      this.w0 = (long) LONGS.get(data, offset);
+      this.w1 = (long) LONGS.get(data, offset + 8);
+      this.w2 = (long) LONGS.get(data, offset + 16);
+      this.w3 = (long) LONGS.get(data, offset + 24);
+    } else {
+      this.bytes = Arrays.copyOfRange(data, offset, offset + len);
+    } // if-else
+  } // set(byte[], int, int)
+
+  /**
+   * Set the contents of this hash from a big-endian buffer, without
+   * moving its position.
+   *
+   * @param buf
+   *   The buffer.
+   * @param index
+   *   The index of the first byte.
+   * @param len
+   *   The number of bytes.
+   */
+  void set(ByteBuffer buf, int index, int len) {
+    if (len == WIDE) {
+      this.bytes = null;
+      this.w0 = buf.getLong(index);
+      this.w1 = buf.getLong(index + 8);
+      this.w2 = buf.getLong(index + 16);
+      this.w3 = buf.getLong(index + 24);
+    } else {
+      this.bytes = new byte[len];
+      buf.get(index, this.bytes);
+    } // if-else
+  } // set(ByteBuffer, int, int)
+
+  /**
+   * Get a hash with the given digest. When the digest is 32 bytes, the
+   * result is a view reused by every call on this thread, so it is only
+   * good until the next call and must not be kept.
+   *
+   * @param data
+   *   The array holding the digest.
+   * @param offset
+   *   The index of the first byte of the digest.
+   * @param len
+   *   The number of bytes in the digest.
+   *
+   * @return a hash with those bytes.
+   */
+  static Hash view(byte[] data, int offset, int len) {
+    if (len != WIDE) {
+      return new Hash(Arrays.copyOfRange(data, offset, offset + len));
+    } // if
+    Hash view = VIEWS.get();
+    view.set(data, offset, len);
+    return view;
+  } // view(byte[], int, int)
+
+  /**
+   * Read a hash from a big-endian buffer, without moving its position.
+   *
+   * @param buf
+   *   The buffer.
+   * @param index
+   *   The index of the first byte of the hash.
+   * @param len
+   *   The number of bytes in the hash.
+   *
+   * @return the hash.
+   */
+  static Hash read(ByteBuffer buf, int index, int len) {
+    if (len == WIDE) {
+      return new Hash(buf.getLong(index), buf.getLong(index + 8),
+          buf.getLong(index + 16), buf.getLong(index + 24));
+    } // if
+    byte[] data = new byte[len];
+    buf.get(index, data);
+    return new Hash(data);
+  } // read(ByteBuffer, int, int)
+
+  /**
+   * Get one of the words of a 32-byte hash.
+   *
+   * @param i
+   *   The index of the word, from 0 to 3.
+   *
+   * @return the word.
+   */
+  long word(int i) {
+    switch (i) {
+      case 0:
+        return this.w0;
+      case 1:
+        return this.w1;
+      case 2:
+        return this.w2;
+      default:
+        return this.w3;
+    } // switch
+  } // word(int)
+
+  /**
+   * Determine if this hash has the same bytes as part of an array.
+   *
+   * @param data
+   *   The array.
+   * @param offset
+   *   The index of the first byte to compare.
+   * @param len
+   *   The number of bytes to compare.
+   *
+   * @return true if the bytes are the same and false otherwise.
+   */
+  boolean matches(byte[] data, int offset, int len) {
+    if (this.bytes != null) {
+      return Arrays.equals(this.bytes, 0, this.bytes.length, data, offset, offset + len);
+    } // if
+    return (len == WIDE)
+        && (this.w0 == (long) LONGS.get(data, offset))
+        && (this.w1 == (long) LONGS.get(data, offset + 8))
+        && (this.w2 == (long) LONGS.get(data, offset + 16))
+        && (this.w3 == (long) LONGS.get(data, offset + 24));
+  } // matches(byte[], int, int)
+
+  /**
+   * Write the bytes of this hash to a buffer, without copying them
+   * anywhere else.
+   *
+   * @param buf
+   *   The buffer, which must have length() bytes remaining.
+   *
+   * @return the buffer.
+   */
+  ByteBuffer writeTo(ByteBuffer buf) {
+    if (this.bytes != null) {
+      return buf.put(this.bytes);
+    } // if
+    ByteOrder order = buf.order();
+    buf.order(ByteOrder.BIG_ENDIAN);
+    buf.putLong(this.w0).putLong(this.w1).putLong(this.w2).putLong(this.w3);
+    return buf.order(order);
+  } // writeTo(ByteBuffer)
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -42,7 +272,7 @@ public class Hash {
    * @return the number of bytes in the hash.
    */
   public int length() {
-    return this.bytes.length;
+    return (this.bytes == null) ? WIDE : this.bytes.length;
   } // length()
 
   /**
@@ -55,7 +285,13 @@ public class Hash {
    * @return the ith byte
    */
   public byte get(int i) {
-    return this.bytes[i];
+    if (this.bytes != null) {
+      return this.bytes[i];
+    } // if
+    if ((i < 0) || (i >= WIDE)) {
+      throw new ArrayIndexOutOfBoundsException(i);
+    } // if
+    return (byte) (word(i >>> 3) >>> ((7 - (i & 7)) << 3));
   } // get()
 
   /**
@@ -65,7 +301,12 @@ public class Hash {
    * @return a copy of the bytes in the hash.
    */
   public byte[] getBytes() {
-    return Arrays.copyOf(this.bytes, this.bytes.length);
+    if (this.bytes != null) {
+      return Arrays.copyOf(this.bytes, this.bytes.length);
+    } // if
+    byte[] result = new byte[WIDE];
+    writeTo(ByteBuffer.wrap(result));
+    return result;
   } // getBytes()
 
   /**
@@ -74,11 +315,14 @@ public class Hash {
    * @return the hash as a hex string.
    */
   public String toString() {
-    StringBuilder sb = new StringBuilder();
-    for (int i = 0; i < this.bytes.length; i++) {
-      sb.append(String.format("%02X", Byte.toUnsignedInt(this.bytes[i])));
+    int len = this.length();
+    char[] chars = new char[2 * len];
+    for (int i = 0; i < len; i++) {
+      int b = Byte.toUnsignedInt(this.get(i));
+      chars[2 * i] = HEX[b >>> 4];
+      chars[2 * i + 1] = HEX[b & 0xF];
     } // for
-    return sb.toString();
+    return new String(chars);
   } // toString()
 
   /**
@@ -95,15 +339,24 @@ public class Hash {
       return false;
     } // if
     Hash otherHash = (Hash) other;
-    return Arrays.equals(this.bytes, otherHash.bytes);
+    if ((this.bytes != null) || (otherHash.bytes != null)) {
+      return Arrays.equals(this.bytes, otherHash.bytes);
+    } // if
+    return (this.w0 == otherHash.w0) && (this.w1 == otherHash.w1)
+        && (this.w2 == otherHash.w2) && (this.w3 == otherHash.w3);
   } // equals(Object)
 
   /**
-   * Get the hash code of this object.
+   * Get the hash code of this object. The last bytes of a SHA-256 hash
+   * are as good as random (unlike the first, which mining makes zero),
+   * so they serve as is.
    *
    * @return the hash code.
    */
   public int hashCode() {
-    return this.toString().hashCode();
+    if (this.bytes != null) {
+      return Arrays.hashCode(this.bytes);
+    } // if
+    return Long.hashCode(this.w3);
   } // hashCode()
 } // class Hash
@@ -0,0 +1,176 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * An index from the hash of each block to its number. The index is an
+ * open-addressed table of block numbers with linear probing, so each
+ * block costs a few bytes rather than a boxed map entry; the hashes
+ * themselves are read from the blocks.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class HashIndex {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The smallest number of slots.
+   */
+  static final int MIN_CAPACITY = 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The blocks indexed.
+   */
+  BlockStore store;
+
+  /**
+   * One more than the number of the block in each slot, or 0 for an
+   * empty slot. The length is a power of two.
+   */
+  int[] slots = new int[MIN_CAPACITY];
+
+  /**
+   * The number of blocks indexed.
+   */
+  int size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty index for some blocks.
+   *
+   * @param blocks
+   *   The blocks to index.
+   */
+  HashIndex(BlockStore blocks) {
+    this.store = blocks;
+  } // HashIndex(BlockStore)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the slot where a hash would be stored if there were no
+   * collisions.
+   *
+   * @param hash
+   *   The hash.
+   * @param mask
+   *   One less than the number of slots.
+   *
+   * @return the slot.
+   */
+  static int home(Hash hash, int mask) {
+    int h = hash.hashCode() * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  } // home(Hash, int)
+
+  /**
+   * Put a block in the first free slot after its home.
+   *
+   * @param table
+   *   The slots.
+   * @param num
+   *   The number of the block.
+   */
+  void insert(int[] table, int num) {
+    int mask = table.length - 1;
+    int i = home(this.store.hash(num), mask);
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    } // while
+    table[i] = num + 1;
+  } // insert(int[], int)
+
+  /**
+   * Double the number of slots.
+   */
+  void grow() {
+    int[] bigger = new int[this.slots.length * 2];
+    for (int entry : this.slots) {
+      if (entry != 0) {
+        insert(bigger, entry - 1);
+      } // if
+    } // for
+    this.slots = bigger;
+  } // grow()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Index a block that is in the store.
+   *
+   * @param num
+   *   The number of the block.
+   */
+  void add(int num) {
+    if (2 * (this.size + 1) > this.slots.length) {
+      grow();
+    } // if
+    insert(this.slots, num);
+    this.size++;
+  } // add(int)
+
+  /**
+   * Stop indexing a block, which must still be in the store. Later
+   * entries in its run are shifted back, so no tombstones are left.
+   *
+   * @param num
+   *   The number of the block.
+   */
+  void remove(int num) {
+    int mask = this.slots.length - 1;
+    int i = home(this.store.hash(num), mask);
+    while (this.slots[i] != num + 1) {
+      if (this.slots[i] == 0) {
+        return;
+      } // if
+      i = (i + 1) & mask;
+    } // while
+    this.size--;
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      int entry = this.slots[j];
+      if (entry == 0) {
+        this.slots[i] = 0;
+        return;
+      } // if
+      int k = home(this.store.hash(entry - 1), mask);
+      // The entry at j may move back to i unless its home lies in (i, j].
+      if (((j - k) & mask) >= ((j - i) & mask)) {
+        this.slots[i] = entry;
+        i = j;
+      } // if
+    } // while
+  } // remove(int)
+
+  /**
+   * Find the block with a hash.
+   *
+   * @param hash
+   *   The hash.
+   *
+   * @return the number of the block, or -1 if no block has that hash.
+   */
+  int find(Hash hash) {
+    int mask = this.slots.length - 1;
+    for (int i = home(hash, mask); this.slots[i] != 0; i = (i + 1) & mask) {
+      int num = this.slots[i] - 1;
+      if (this.store.hash(num).equals(hash)) {
+        return num;
+      } // if
+    } // for
+    return -1;
+  } // find(Hash)
+} // class HashIndex
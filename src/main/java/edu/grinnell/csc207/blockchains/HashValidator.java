@@ -1,13 +1,22 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.nio.ByteBuffer;
+
 /**
  * Things that validate hashes.
  *
+ * Miners check raw digests with isValid(byte[], int, int), which by
+ * default shows the digest to isValid(Hash) through a reused view rather
+ * than a copy. Validators that care about speed may override the raw
+ * methods to skip the view entirely.
+ *
  * @author Samuel A. Rebelsky
  */
 public interface HashValidator {
   /**
-   * Determine if a hash meets some criterion.
+   * Determine if a hash meets some criterion. The hash may be a view of
+   * a buffer that changes after the call returns, so validators should
+   * not keep it.
    *
    * @param hash
    *   The hash we're checking.
@@ -16,4 +25,77 @@ public interface HashValidator {
    */
   boolean isValid(Hash hash);
 
+  /**
+   * Determine if the digest stored in part of an array meets the
+   * criterion.
+   *
+   * @param digest
+   *   The array holding the digest.
+   * @param offset
+   *   The index of the first byte of the digest.
+   * @param length
+   *   The number of bytes in the digest.
+   *
+   * @return true if the digest is valid and false otherwise.
+   */
+  default boolean isValid(byte[] digest, int offset, int length) {
+    return isValid(Hash.view(digest, offset, length));
+  } // isValid(byte[], int, int)
+
+  /**
+   * Determine if the digest between the position and limit of a buffer
+   * meets the criterion. The position of the buffer is not changed.
+   *
+   * @param digest
+   *   The buffer holding the digest.
+   *
+   * @return true if the digest is valid and false otherwise.
+   */
+  default boolean isValid(ByteBuffer digest) {
+    if (digest.hasArray()) {
+      return isValid(digest.array(), digest.arrayOffset() + digest.position(),
+          digest.remaining());
+    } // if
+    byte[] bytes = new byte[digest.remaining()];
+    digest.duplicate().get(bytes);
+    return isValid(bytes, 0, bytes.length);
+  } // isValid(ByteBuffer)
+
+  /**
+   * Make a validator that accepts hashes that start with the given bytes,
+   * checking raw digests in place.
+   *
+   * @param prefix
+   *   The bytes valid hashes start with.
+   *
+   * @return a validator for that prefix.
+   */
+  static HashValidator startsWith(byte... prefix) {
+    byte[] expected = prefix.clone();
+    return new HashValidator() {
+      public boolean isValid(Hash hash) {
+        if (hash.length() < expected.length) {
+          return false;
+        } // if
+        for (int i = 0; i < expected.length; i++) {
+          if (hash.get(i) != expected[i]) {
+            return false;
+          } // if
+        } // for
+        return true;
+      } // isValid(Hash)
+
+      public boolean isValid(byte[] digest, int offset, int length) {
+        if (length < expected.length) {
+          return false;
+        } // if
+        for (int i = 0; i < expected.length; i++) {
+          if (digest[offset + i] != expected[i]) {
+            return false;
+          } // if
+        } // for
+        return true;
+      } // isValid(byte[], int, int)
+    };
+  } // startsWith(byte...)
 } // interface HashValidator
@@ -0,0 +1,452 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The balance of every user, kept up to date as transactions are
+ * applied and undone, so that balances can be looked up without
+ * replaying the chain. Each applied transaction leaves an entry in an
+ * undo log, so the last one can be taken back in constant time.
+ *
+ * Users are identified by their IDs in a UserDictionary, and balances
+ * and the undo log are kept in arrays, so applying a transaction boxes
+ * nothing. A ledger may also keep its users ordered by balance in a
+ * BalanceIndex.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class Ledger {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The undo flag for a transaction that added its source.
+   */
+  static final byte NEW_SOURCE = 1;
+
+  /**
+   * The undo flag for a transaction that added its target.
+   */
+  static final byte NEW_TARGET = 2;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The IDs of the users.
+   */
+  UserDictionary users;
+
+  /**
+   * The balance of each user, by ID.
+   */
+  int[] balances = new int[16];
+
+  /**
+   * Whether each user, by ID, has taken part in a transaction.
+   */
+  boolean[] known = new boolean[16];
+
+  /**
+   * The number of users who have taken part in a transaction.
+   */
+  int count;
+
+  /**
+   * The IDs of the users whose balances have changed since the last
+   * call to takeChanged(), in no order.
+   */
+  int[] changed = new int[16];
+
+  /**
+   * The number of IDs in changed.
+   */
+  int changes;
+
+  /**
+   * Whether each user, by ID, is in changed.
+   */
+  boolean[] marked = new boolean[16];
+
+  /**
+   * The source ID of each transaction in the undo log.
+   */
+  int[] logSource = new int[16];
+
+  /**
+   * The target ID of each transaction in the undo log.
+   */
+  int[] logTarget = new int[16];
+
+  /**
+   * The amount of each transaction in the undo log.
+   */
+  int[] logAmount = new int[16];
+
+  /**
+   * The NEW_SOURCE and NEW_TARGET flags of each transaction in the undo
+   * log.
+   */
+  byte[] logFlags = new byte[16];
+
+  /**
+   * The number of transactions applied and not yet undone.
+   */
+  int depth;
+
+  /**
+   * The users ordered by balance, or null if the ledger does not keep
+   * them in order.
+   */
+  BalanceIndex ranks;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty ledger with its own user IDs.
+   */
+  Ledger() {
+    this(new UserDictionary());
+  } // Ledger()
+
+  /**
+   * Create an empty ledger that shares user IDs with others.
+   *
+   * @param dictionary
+   *   The IDs of the users.
+   */
+  Ledger(UserDictionary dictionary) {
+    this(dictionary, null);
+  } // Ledger(UserDictionary)
+
+  /**
+   * Create an empty ledger that shares user IDs with others and keeps
+   * its users ordered by balance.
+   *
+   * @param dictionary
+   *   The IDs of the users.
+   * @param index
+   *   The index to keep the users in, or null for none.
+   */
+  Ledger(UserDictionary dictionary, BalanceIndex index) {
+    this.users = dictionary;
+    this.ranks = index;
+  } // Ledger(UserDictionary, BalanceIndex)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Add an amount to a user's balance.
+   *
+   * @param id
+   *   The ID of the user.
+   * @param amount
+   *   The amount to add, which may be negative.
+   *
+   * @return true if the user had not taken part in a transaction.
+   */
+  boolean credit(int id, int amount) {
+    if (id >= this.known.length) {
+      int length = Math.max(id + 1, this.known.length * 2);
+      this.balances = Arrays.copyOf(this.balances, length);
+      this.known = Arrays.copyOf(this.known, length);
+      this.marked = Arrays.copyOf(this.marked, length);
+    } // if
+    if (this.known[id]) {
+      move(id, this.balances[id] + amount);
+      return false;
+    } // if
+    touch(id);
+    this.known[id] = true;
+    this.balances[id] = amount;
+    this.count++;
+    if (this.ranks != null) {
+      this.ranks.add(id, amount);
+    } // if
+    return true;
+  } // credit(int, int)
+
+  /**
+   * Change the balance of a known user.
+   *
+   * @param id
+   *   The ID of the user.
+   * @param balance
+   *   The new balance.
+   */
+  void move(int id, int balance) {
+    touch(id);
+    if (this.ranks != null) {
+      this.ranks.move(id, this.balances[id], balance);
+    } // if
+    this.balances[id] = balance;
+  } // move(int, int)
+
+  /**
+   * Forget a user.
+   *
+   * @param id
+   *   The ID of the user.
+   */
+  void forget(int id) {
+    touch(id);
+    if (this.ranks != null) {
+      this.ranks.remove(id, this.balances[id]);
+    } // if
+    this.known[id] = false;
+    this.count--;
+  } // forget(int)
+
+  /**
+   * Note that a user's balance has changed, or may have.
+   *
+   * @param id
+   *   The ID of the user, which must be below known.length.
+   */
+  void touch(int id) {
+    if (this.marked[id]) {
+      return;
+    } // if
+    if (this.changes == this.changed.length) {
+      this.changed = Arrays.copyOf(this.changed, this.changes * 2);
+    } // if
+    this.marked[id] = true;
+    this.changed[this.changes++] = id;
+  } // touch(int)
+
+  /**
+   * Add an entry to the undo log.
+   *
+   * @param source
+   *   The source ID.
+   * @param target
+   *   The target ID.
+   * @param amount
+   *   The amount.
+   * @param flags
+   *   The NEW_SOURCE and NEW_TARGET flags.
+   */
+  void log(int source, int target, int amount, int flags) {
+    if (this.depth == this.logFlags.length) {
+      int length = this.depth * 2;
+      this.logSource = Arrays.copyOf(this.logSource, length);
+      this.logTarget = Arrays.copyOf(this.logTarget, length);
+      this.logAmount = Arrays.copyOf(this.logAmount, length);
+      this.logFlags = Arrays.copyOf(this.logFlags, length);
+    } // if
+    this.logSource[this.depth] = source;
+    this.logTarget[this.depth] = target;
+    this.logAmount[this.depth] = amount;
+    this.logFlags[this.depth] = (byte) flags;
+    this.depth++;
+  } // log(int, int, int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Apply a transaction, moving its amount from the source to the
+   * target. Deposits (with an empty source) only add to the target, and
+   * the empty user is never recorded.
+   *
+   * @param t
+   *   The transaction to apply.
+   *
+   * @return true if the source had the funds to pay, false otherwise.
+   *   The transaction is applied either way.
+   */
+  boolean apply(Transaction t) {
+    int source = this.users.intern(t.getSource());
+    int target = this.users.intern(t.getTarget());
+    int amount = t.getAmount();
+    int flags = 0;
+    if ((target != UserDictionary.NONE) && credit(target, amount)) {
+      flags |= NEW_TARGET;
+    } // if
+    if (source == UserDictionary.NONE) {
+      log(source, target, amount, flags);
+      return true;
+    } // if
+    if (credit(source, -amount)) {
+      flags |= NEW_SOURCE;
+    } // if
+    log(source, target, amount, flags);
+    return ((flags & NEW_SOURCE) == 0) && (this.balances[source] >= 0);
+  } // apply(Transaction)
+
+  /**
+   * Record that a transaction was applied elsewhere, after its effect
+   * on the balances has been set with setBalance. Its source, if any,
+   * must already have been known.
+   *
+   * @param source
+   *   The ID of its source, or UserDictionary.NONE.
+   * @param target
+   *   The ID of its target, or UserDictionary.NONE.
+   * @param amount
+   *   Its amount.
+   * @param addedTarget
+   *   Whether it added its target to the ledger.
+   */
+  void applied(int source, int target, int amount, boolean addedTarget) {
+    log(source, target, amount, addedTarget ? NEW_TARGET : 0);
+  } // applied(int, int, int, boolean)
+
+  /**
+   * Set the balance of a user.
+   *
+   * @param id
+   *   The ID of the user.
+   * @param amount
+   *   The new balance.
+   */
+  void setBalance(int id, int amount) {
+    if (isKnown(id)) {
+      move(id, amount);
+    } else {
+      credit(id, amount);
+    } // if-else
+  } // setBalance(int, int)
+
+  /**
+   * Get the ID of the source of the last transaction applied.
+   *
+   * @return the ID, or UserDictionary.NONE for a deposit.
+   */
+  int lastSource() {
+    return this.logSource[this.depth - 1];
+  } // lastSource()
+
+  /**
+   * Get the ID of the target of the last transaction applied.
+   *
+   * @return the ID, or UserDictionary.NONE for the empty user.
+   */
+  int lastTarget() {
+    return this.logTarget[this.depth - 1];
+  } // lastTarget()
+
+  /**
+   * Undo the last transaction applied, restoring the balances and
+   * forgetting any user it added.
+   *
+   * @throws IndexOutOfBoundsException if no transaction is left to undo.
+   */
+  void undo() {
+    if (this.depth == 0) {
+      throw new IndexOutOfBoundsException("Nothing to undo");
+    } // if
+    this.depth--;
+    int source = this.logSource[this.depth];
+    int target = this.logTarget[this.depth];
+    int amount = this.logAmount[this.depth];
+    int flags = this.logFlags[this.depth];
+    if ((flags & NEW_SOURCE) != 0) {
+      forget(source);
+    } else if (source != UserDictionary.NONE) {
+      move(source, this.balances[source] + amount);
+    } // if-else
+    if ((flags & NEW_TARGET) != 0) {
+      forget(target);
+    } else if (target != UserDictionary.NONE) {
+      move(target, this.balances[target] - amount);
+    } // if-else
+  } // undo()
+
+  /**
+   * Determine whether a user has taken part in a transaction. Any
+   * number of threads may ask, as long as none changes the ledger.
+   *
+   * @param user
+   *   The user.
+   *
+   * @return true if the user has, false otherwise.
+   */
+  boolean has(String user) {
+    return isKnown(this.users.find(user));
+  } // has(String)
+
+  /**
+   * Determine whether the user with an ID has taken part in a
+   * transaction.
+   *
+   * @param id
+   *   The ID of the user, or UserDictionary.NONE.
+   *
+   * @return true if the user has, false otherwise.
+   */
+  boolean isKnown(int id) {
+    return (id != UserDictionary.NONE) && (id < this.known.length) && this.known[id];
+  } // isKnown(int)
+
+  /**
+   * Get the balance of a user.
+   *
+   * @param user
+   *   The user.
+   *
+   * @return that user's balance, or 0 if the user is unknown.
+   */
+  int balance(String user) {
+    int id = this.users.find(user);
+    return isKnown(id) ? this.balances[id] : 0;
+  } // balance(String)
+
+  /**
+   * Get the users whose balances have changed since the last call, and
+   * start noting changes afresh.
+   *
+   * @return their IDs, in increasing order.
+   */
+  int[] takeChanged() {
+    int[] ids = Arrays.copyOf(this.changed, this.changes);
+    for (int id : ids) {
+      this.marked[id] = false;
+    } // for
+    this.changes = 0;
+    Arrays.sort(ids);
+    return ids;
+  } // takeChanged()
+
+  /**
+   * Get the users who have taken part in a transaction.
+   *
+   * @return an iterator of those users.
+   */
+  Iterator<String> users() {
+    return new Iterator<String>() {
+      int next = advance(0);
+
+      int advance(int from) {
+        int id = from;
+        while ((id < known.length) && !known[id]) {
+          id++;
+        } // while
+        return id;
+      } // advance(int)
+
+      public boolean hasNext() {
+        return this.next < known.length;
+      } // hasNext()
+
+      public String next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        String name = users.name(this.next);
+        this.next = advance(this.next + 1);
+        return name;
+      } // next()
+    };
+  } // users()
+} // class Ledger
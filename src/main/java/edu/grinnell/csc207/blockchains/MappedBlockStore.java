@@ -0,0 +1,687 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Blocks kept in memory-mapped files. Each block has a fixed-size
+ * header in one file, so block n is found by arithmetic, and the names
+ * in its transaction are kept in a second file. Blocks are built from
+ * the mapping when asked for and are not kept, so the store costs
+ * almost no heap however long the chain is, and opening it reads
+ * nothing but a count.
+ *
+ * Headers and names are written into the mapping as blocks are added;
+ * the count of blocks in the file only moves forward when sync() (or
+ * close()) has forced them to disk, so a crash loses the blocks added
+ * since the last sync and never leaves a half-written one.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class MappedBlockStore implements BlockStore {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The first int in every header file.
+   */
+  static final int MAGIC = 0x426c6b73;
+
+  /**
+   * The version of the file format.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The number of bytes before the first header: the magic number, the
+   * version, the count of blocks, and the end of the names.
+   */
+  static final int META = 24;
+
+  /**
+   * The number of bytes in each header.
+   */
+  static final int RECORD = 104;
+
+  /**
+   * The largest hash a header can hold.
+   */
+  static final int MAX_HASH = 32;
+
+  /**
+   * Where the nonce goes in a header.
+   */
+  static final int NONCE = 0;
+
+  /**
+   * Where the amount goes in a header.
+   */
+  static final int AMOUNT = 8;
+
+  /**
+   * Where the length of the source name goes in a header.
+   */
+  static final int SOURCE_LENGTH = 12;
+
+  /**
+   * Where the offset of the source name goes in a header.
+   */
+  static final int SOURCE = 16;
+
+  /**
+   * Where the offset of the target name goes in a header.
+   */
+  static final int TARGET = 24;
+
+  /**
+   * Where the length of the target name goes in a header.
+   */
+  static final int TARGET_LENGTH = 32;
+
+  /**
+   * Where the length of the hash goes in a header.
+   */
+  static final int HASH_LENGTH = 36;
+
+  /**
+   * Where the length of the previous hash goes in a header.
+   */
+  static final int PREV_LENGTH = 37;
+
+  /**
+   * Where the hash goes in a header.
+   */
+  static final int HASH = 40;
+
+  /**
+   * Where the previous hash goes in a header.
+   */
+  static final int PREV = HASH + MAX_HASH;
+
+  /**
+   * The number of headers in each mapped segment, as bits.
+   */
+  static final int SEGMENT_BITS = 16;
+
+  /**
+   * The mask for a header's place within its segment.
+   */
+  static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+  /**
+   * The number of bytes in each mapped chunk of names, as bits. A name
+   * never spans two chunks.
+   */
+  static final int CHUNK_BITS = 22;
+
+  /**
+   * The number of bytes in each mapped chunk of names.
+   */
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The file of headers.
+   */
+  FileChannel headerFile;
+
+  /**
+   * The file of names.
+   */
+  FileChannel nameFile;
+
+  /**
+   * The mapped start of the header file.
+   */
+  MappedByteBuffer meta;
+
+  /**
+   * The mapped segments of headers. Only those in use are mapped.
+   */
+  MappedByteBuffer[] segments = new MappedByteBuffer[16];
+
+  /**
+   * The mapped chunks of names. Only those in use are mapped.
+   */
+  MappedByteBuffer[] chunks = new MappedByteBuffer[16];
+
+  /**
+   * The number of blocks stored.
+   */
+  int size;
+
+  /**
+   * The number of blocks forced to disk and counted in the file.
+   */
+  int synced;
+
+  /**
+   * The offset of the end of the names in use.
+   */
+  long namesEnd;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a store over open files.
+   *
+   * @param headers
+   *   The file of headers.
+   * @param names
+   *   The file of names.
+   *
+   * @throws IOException
+   *   If the files cannot be mapped or are not a block store.
+   */
+  MappedBlockStore(FileChannel headers, FileChannel names) throws IOException {
+    this.headerFile = headers;
+    this.nameFile = names;
+    boolean fresh = headers.size() < META;
+    this.meta = headers.map(FileChannel.MapMode.READ_WRITE, 0, META);
+    if (fresh) {
+      this.meta.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, 0).putLong(16, 0);
+      this.meta.force();
+    } else if ((this.meta.getInt(0) != MAGIC) || (this.meta.getInt(4) != VERSION)) {
+      throw new IOException("Not a block store");
+    } // if-else
+    this.size = this.meta.getInt(8);
+    this.synced = this.size;
+    this.namesEnd = this.meta.getLong(16);
+    for (int seg = 0; seg <= (this.size - 1) >> SEGMENT_BITS; seg++) {
+      segment(seg);
+    } // for
+    for (int chunk = 0; chunk <= (int) ((this.namesEnd - 1) >> CHUNK_BITS); chunk++) {
+      chunk(chunk);
+    } // for
+  } // MappedBlockStore(FileChannel, FileChannel)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get a segment of headers, mapping it if need be.
+   *
+   * @param seg
+   *   The number of the segment.
+   *
+   * @return the segment.
+   *
+   * @throws IOException
+   *   If the segment cannot be mapped.
+   */
+  MappedByteBuffer segment(int seg) throws IOException {
+    if (seg >= this.segments.length) {
+      this.segments = Arrays.copyOf(this.segments, Math.max(seg + 1, seg * 2));
+    } // if
+    if (this.segments[seg] == null) {
+      this.segments[seg] = this.headerFile.map(FileChannel.MapMode.READ_WRITE,
+          META + ((long) seg << SEGMENT_BITS) * RECORD, (long) RECORD << SEGMENT_BITS);
+    } // if
+    return this.segments[seg];
+  } // segment(int)
+
+  /**
+   * Get a chunk of names, mapping it if need be.
+   *
+   * @param chunk
+   *   The number of the chunk.
+   *
+   * @return the chunk.
+   *
+   * @throws IOException
+   *   If the chunk cannot be mapped.
+   */
+  MappedByteBuffer chunk(int chunk) throws IOException {
+    if (chunk >= this.chunks.length) {
+      this.chunks = Arrays.copyOf(this.chunks, Math.max(chunk + 1, chunk * 2));
+    } // if
+    if (this.chunks[chunk] == null) {
+      this.chunks[chunk] = this.nameFile.map(FileChannel.MapMode.READ_WRITE,
+          (long) chunk << CHUNK_BITS, CHUNK_SIZE);
+    } // if
+    return this.chunks[chunk];
+  } // chunk(int)
+
+  /**
+   * Make sure that a block number is in range.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @throws IndexOutOfBoundsException if it is not.
+   */
+  void checkIndex(int num) {
+    if ((num < 0) || (num >= this.size)) {
+      throw new IndexOutOfBoundsException("No block " + num + " in " + this.size);
+    } // if
+  } // checkIndex(int)
+
+  /**
+   * Write a name after the names in use.
+   *
+   * @param bytes
+   *   The UTF-8 bytes of the name.
+   * @param header
+   *   The segment holding the header of the block.
+   * @param pos
+   *   The position of the header in its segment.
+   * @param offsetField
+   *   Where the offset of the name goes in the header.
+   * @param lengthField
+   *   Where the length of the name goes in the header.
+   *
+   * @throws IOException
+   *   If the names cannot be mapped.
+   */
+  void writeName(byte[] bytes, MappedByteBuffer header, int pos, int offsetField,
+      int lengthField) throws IOException {
+    if (bytes.length > CHUNK_SIZE) {
+      throw new IllegalArgumentException("Name too long to store");
+    } // if
+    if ((this.namesEnd & (CHUNK_SIZE - 1)) + bytes.length > CHUNK_SIZE) {
+      this.namesEnd = ((this.namesEnd >> CHUNK_BITS) + 1) << CHUNK_BITS;
+    } // if
+    if (bytes.length > 0) {
+      chunk((int) (this.namesEnd >> CHUNK_BITS))
+          .put((int) (this.namesEnd & (CHUNK_SIZE - 1)), bytes);
+    } // if
+    header.putLong(pos + offsetField, this.namesEnd);
+    header.putInt(pos + lengthField, bytes.length);
+    this.namesEnd += bytes.length;
+  } // writeName(byte[], MappedByteBuffer, int, int, int)
+
+  /**
+   * Read a name.
+   *
+   * @param offset
+   *   The offset of the name.
+   * @param length
+   *   The number of bytes in the name.
+   *
+   * @return the name.
+   */
+  String readName(long offset, int length) {
+    if (length == 0) {
+      return "";
+    } // if
+    byte[] bytes = new byte[length];
+    this.chunks[(int) (offset >> CHUNK_BITS)].get((int) (offset & (CHUNK_SIZE - 1)), bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  } // readName(long, int)
+
+  /**
+   * Determine if a name has the given bytes, without reading it.
+   *
+   * @param offset
+   *   The offset of the name.
+   * @param length
+   *   The number of bytes in the name.
+   * @param bytes
+   *   The bytes to compare.
+   *
+   * @return true if they are the same and false otherwise.
+   */
+  boolean nameEquals(long offset, int length, byte[] bytes) {
+    if (length != bytes.length) {
+      return false;
+    } // if
+    if (length == 0) {
+      return true;
+    } // if
+    MappedByteBuffer chunk = this.chunks[(int) (offset >> CHUNK_BITS)];
+    int start = (int) (offset & (CHUNK_SIZE - 1));
+    for (int i = 0; i < length; i++) {
+      if (chunk.get(start + i) != bytes[i]) {
+        return false;
+      } // if
+    } // for
+    return true;
+  } // nameEquals(long, int, byte[])
+
+  /**
+   * Copy a length and that many bytes of the mapping into a buffer.
+   *
+   * @param from
+   *   The mapped segment or chunk.
+   * @param index
+   *   The index of the first byte.
+   * @param length
+   *   The number of bytes.
+   * @param to
+   *   The buffer, from its position, which is left after the bytes.
+   */
+  static void copy(MappedByteBuffer from, int index, int length, ByteBuffer to) {
+    to.putInt(length);
+    to.put(to.position(), from, index, length);
+    to.position(to.position() + length);
+  } // copy(MappedByteBuffer, int, int, ByteBuffer)
+
+  /**
+   * Copy the length and bytes of a name into a buffer.
+   *
+   * @param offset
+   *   The offset of the name.
+   * @param length
+   *   The number of bytes in the name.
+   * @param to
+   *   The buffer, from its position, which is left after the name.
+   */
+  void copyName(long offset, int length, ByteBuffer to) {
+    if (length == 0) {
+      to.putInt(0);
+    } else {
+      copy(this.chunks[(int) (offset >> CHUNK_BITS)], (int) (offset & (CHUNK_SIZE - 1)),
+          length, to);
+    } // if-else
+  } // copyName(long, int, ByteBuffer)
+
+  /**
+   * Point a block at another header, reusing its hashes, and its
+   * transaction and names when they have not changed.
+   *
+   * @param num
+   *   The number of the block.
+   * @param blk
+   *   The block to reuse.
+   *
+   * @return blk.
+   */
+  Block fill(int num, Block blk) {
+    MappedByteBuffer seg = this.segments[num >>> SEGMENT_BITS];
+    int pos = (num & SEGMENT_MASK) * RECORD;
+    Transaction t = blk.transaction;
+    long sourceOffset = seg.getLong(pos + SOURCE);
+    int sourceLength = seg.getInt(pos + SOURCE_LENGTH);
+    long targetOffset = seg.getLong(pos + TARGET);
+    int targetLength = seg.getInt(pos + TARGET_LENGTH);
+    int amount = seg.getInt(pos + AMOUNT);
+    boolean sameSource = nameEquals(sourceOffset, sourceLength, t.sourceBytes());
+    boolean sameTarget = nameEquals(targetOffset, targetLength, t.targetBytes());
+    if (!sameSource || !sameTarget || (amount != t.getAmount())) {
+      blk.transaction = new Transaction(
+          sameSource ? t.getSource() : readName(sourceOffset, sourceLength),
+          sameTarget ? t.getTarget() : readName(targetOffset, targetLength), amount);
+    } // if
+    blk.blockNum = num;
+    blk.nonce = seg.getLong(pos + NONCE);
+    blk.hash.set(seg, pos + HASH, seg.get(pos + HASH_LENGTH));
+    blk.previousHash.set(seg, pos + PREV, seg.get(pos + PREV_LENGTH));
+    return blk;
+  } // fill(int, Block)
+
+  /**
+   * Record the count of blocks and the end of the names in the file.
+   */
+  void writeMeta() {
+    this.meta.putInt(8, this.size).putLong(16, this.namesEnd);
+    this.meta.force();
+    this.synced = this.size;
+  } // writeMeta()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Open a store in a directory, creating it if need be.
+   *
+   * @param dir
+   *   The directory.
+   *
+   * @return the store.
+   *
+   * @throws IOException
+   *   If the files cannot be opened or mapped, or are not a block store.
+   */
+  static MappedBlockStore open(Path dir) throws IOException {
+    Files.createDirectories(dir);
+    FileChannel headers = FileChannel.open(dir.resolve("headers.dat"),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      FileChannel names = FileChannel.open(dir.resolve("names.dat"),
+          StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        return new MappedBlockStore(headers, names);
+      } catch (IOException | RuntimeException e) {
+        names.close();
+        throw e;
+      } // try-catch
+    } catch (IOException | RuntimeException e) {
+      headers.close();
+      throw e;
+    } // try-catch
+  } // open(Path)
+
+  /**
+   * Get the number of blocks stored.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Get a block by number, built from its header.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public Block get(int num) {
+    checkIndex(num);
+    MappedByteBuffer seg = this.segments[num >>> SEGMENT_BITS];
+    int pos = (num & SEGMENT_MASK) * RECORD;
+    Transaction t = new Transaction(
+        readName(seg.getLong(pos + SOURCE), seg.getInt(pos + SOURCE_LENGTH)),
+        readName(seg.getLong(pos + TARGET), seg.getInt(pos + TARGET_LENGTH)),
+        seg.getInt(pos + AMOUNT));
+    return new Block(num, t, Hash.read(seg, pos + PREV, seg.get(pos + PREV_LENGTH)),
+        seg.getLong(pos + NONCE), Hash.read(seg, pos + HASH, seg.get(pos + HASH_LENGTH)));
+  } // get(int)
+
+  /**
+   * Get the hash of a block by number, without building the block.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the hash of the block.
+   *
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public Hash hash(int num) {
+    checkIndex(num);
+    MappedByteBuffer seg = this.segments[num >>> SEGMENT_BITS];
+    int pos = (num & SEGMENT_MASK) * RECORD;
+    return Hash.read(seg, pos + HASH, seg.get(pos + HASH_LENGTH));
+  } // hash(int)
+
+  /**
+   * Count the bytes in the encoding of a block, without building it.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the number of bytes.
+   *
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public int encodedLength(int num) {
+    checkIndex(num);
+    MappedByteBuffer seg = this.segments[num >>> SEGMENT_BITS];
+    int pos = (num & SEGMENT_MASK) * RECORD;
+    return 5 * Integer.BYTES + seg.getInt(pos + SOURCE_LENGTH) + seg.getInt(pos + TARGET_LENGTH)
+        + seg.get(pos + PREV_LENGTH) + Long.BYTES;
+  } // encodedLength(int)
+
+  /**
+   * Encode a block straight from the mapping, without building it.
+   *
+   * @param num
+   *   The number of the block.
+   * @param buf
+   *   The buffer to write to, which must be big-endian and have room.
+   *
+   * @return the buffer.
+   *
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public ByteBuffer encode(int num, ByteBuffer buf) {
+    checkIndex(num);
+    MappedByteBuffer seg = this.segments[num >>> SEGMENT_BITS];
+    int pos = (num & SEGMENT_MASK) * RECORD;
+    buf.putInt(num);
+    copyName(seg.getLong(pos + SOURCE), seg.getInt(pos + SOURCE_LENGTH), buf);
+    copyName(seg.getLong(pos + TARGET), seg.getInt(pos + TARGET_LENGTH), buf);
+    buf.putInt(seg.getInt(pos + AMOUNT));
+    copy(seg, pos + PREV, seg.get(pos + PREV_LENGTH), buf);
+    return buf.putLong(seg.getLong(pos + NONCE));
+  } // encode(int, ByteBuffer)
+
+  /**
+   * Add a block after the last one.
+   *
+   * @param blk
+   *   The block to add.
+   *
+   * @throws IllegalArgumentException if a hash of the block is longer
+   *   than 32 bytes or a name is too long to store.
+   * @throws UncheckedIOException if the files cannot be mapped.
+   */
+  public void add(Block blk) {
+    Hash hash = blk.getHash();
+    Hash prev = blk.getPrevHash();
+    if ((hash.length() > MAX_HASH) || (prev.length() > MAX_HASH)) {
+      throw new IllegalArgumentException("Hash too long to store");
+    } // if
+    try {
+      MappedByteBuffer seg = segment(this.size >>> SEGMENT_BITS);
+      int pos = (this.size & SEGMENT_MASK) * RECORD;
+      Transaction t = blk.getTransaction();
+      writeName(t.sourceBytes(), seg, pos, SOURCE, SOURCE_LENGTH);
+      writeName(t.targetBytes(), seg, pos, TARGET, TARGET_LENGTH);
+      seg.putLong(pos + NONCE, blk.getNonce());
+      seg.putInt(pos + AMOUNT, t.getAmount());
+      seg.put(pos + HASH_LENGTH, (byte) hash.length());
+      seg.put(pos + PREV_LENGTH, (byte) prev.length());
+      seg.put(pos + HASH, hash.getBytes());
+      seg.put(pos + PREV, prev.getBytes());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try-catch
+    this.size++;
+  } // add(Block)
+
+  /**
+   * Remove the last block, giving back the room its names took. If the
+   * block was already counted in the file, the file is updated at once,
+   * so that a later block written in its place is never mistaken for it.
+   *
+   * @return the block removed.
+   *
+   * @throws IndexOutOfBoundsException if there are no blocks.
+   */
+  public Block removeLast() {
+    Block blk = get(this.size - 1);
+    int pos = ((this.size - 1) & SEGMENT_MASK) * RECORD;
+    this.namesEnd = this.segments[(this.size - 1) >>> SEGMENT_BITS].getLong(pos + SOURCE);
+    this.size--;
+    if (this.size < this.synced) {
+      writeMeta();
+    } // if
+    return blk;
+  } // removeLast()
+
+  /**
+   * Get an iterator for the blocks, from first to last. The iterator
+   * returns one block, pointed at each header in turn, so a block it
+   * returns is only good until the next call to next() and must not be
+   * kept; use get() for blocks to keep.
+   *
+   * @return an iterator for the blocks.
+   */
+  public Iterator<Block> iterator() {
+    return new Iterator<Block>() {
+      int next = 0;
+
+      Block view = new Block(0, new Transaction("", "", 0), new Hash(new byte[] {}), 0,
+          new Hash(new byte[] {}));
+
+      public boolean hasNext() {
+        return this.next < size;
+      } // hasNext()
+
+      public Block next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        return fill(this.next++, this.view);
+      } // next()
+    };
+  } // iterator()
+
+  /**
+   * Force the blocks added so far to disk and count them in the file.
+   *
+   * @throws IOException
+   *   If the blocks cannot be forced to disk.
+   */
+  public void sync() throws IOException {
+    if (this.size == this.synced) {
+      return;
+    } // if
+    for (int chunk = (int) (this.meta.getLong(16) >> CHUNK_BITS);
+        chunk < this.chunks.length; chunk++) {
+      if (this.chunks[chunk] != null) {
+        this.chunks[chunk].force();
+      } // if
+    } // for
+    for (int seg = this.synced >>> SEGMENT_BITS; seg < this.segments.length; seg++) {
+      if (this.segments[seg] != null) {
+        this.segments[seg].force();
+      } // if
+    } // for
+    writeMeta();
+  } // sync()
+
+  /**
+   * Force the blocks to disk and close the files. The store must not be
+   * used afterwards.
+   *
+   * @throws IOException
+   *   If the blocks cannot be forced or the files closed.
+   */
+  public void close() throws IOException {
+    try {
+      sync();
+    } finally {
+      try {
+        this.headerFile.close();
+      } finally {
+        this.nameFile.close();
+      } // try-finally
+    } // try-finally
+  } // close()
+} // class MappedBlockStore
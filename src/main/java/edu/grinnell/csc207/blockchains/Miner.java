@@ -0,0 +1,322 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A miner that searches for nonces on several threads at once. The
+ * nonce space is split into one contiguous range per worker (see
+ * MiningSession); the first worker to find a valid nonce stops the others.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class Miner {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How long an idle worker thread waits for work before exiting.
+   */
+  static final long IDLE_SECONDS = 30;
+
+  /**
+   * How many attempts a worker makes between progress reports.
+   */
+  static final int REPORT_INTERVAL = 1024;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of worker threads used for each search.
+   */
+  int threads;
+
+  /**
+   * The threads that do the searching.
+   */
+  ExecutorService pool;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new miner that uses one worker per available processor.
+   */
+  public Miner() {
+    this(Runtime.getRuntime().availableProcessors());
+  } // Miner()
+
+  /**
+   * Create a new miner with the given number of workers.
+   *
+   * @param numThreads
+   *   The number of worker threads to search with.
+   *
+   * @throws IllegalArgumentException if numThreads is not positive.
+   */
+  public Miner(int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Miners need at least one thread");
+    } // if
+    this.threads = numThreads;
+    ThreadPoolExecutor workers = new ThreadPoolExecutor(numThreads, numThreads,
+        IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), (r) -> {
+          Thread worker = new Thread(r, "miner");
+          worker.setDaemon(true);
+          return worker;
+        });
+    // Idle miners should not hold on to threads forever.
+    workers.allowCoreThreadTimeOut(true);
+    this.pool = workers;
+  } // Miner(int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Search one range of a session for a valid nonce. Stops early once
+   * any worker finds one or the task is done. The task completes with
+   * the first block found once every worker has counted its attempts.
+   *
+   * @param task
+   *   The task to search for.
+   * @param range
+   *   The range of the session to walk.
+   */
+  static void search(MiningTask task, int range) {
+    MiningSession session = task.session;
+    BlockHasher hasher = BlockHasher.local();
+    hasher.prime(task.blockNum, task.transaction, task.previousHash);
+    HashValidator check = task.validator;
+    long nonce;
+    long left;
+    synchronized (session) {
+      nonce = session.next[range];
+      left = session.remaining[range];
+    } // synchronized
+    if (!task.start()) {
+      return;
+    } // if
+    int unreported = 0;
+    try {
+      while ((left != 0) && !task.stopped()) {
+        byte[] digest = hasher.digest(nonce);
+        unreported++;
+        if (check.isValid(digest, 0, digest.length)) {
+          task.found(new Block(task.blockNum, task.transaction, task.previousHash, nonce));
+          return;
+        } // if
+        nonce++;
+        left--;
+        if (unreported == REPORT_INTERVAL) {
+          task.attempts.add(unreported);
+          session.advance(range, nonce, left, unreported);
+          unreported = 0;
+        } // if
+      } // while
+    } finally {
+      // Every worker counts its attempts before the task can complete
+      task.attempts.add(unreported);
+      session.advance(range, nonce, left, unreported);
+      task.finished(left == 0);
+    } // try-finally
+  } // search(MiningTask, int)
+
+  /**
+   * Wait for a task, stopping it if waiting fails.
+   *
+   * @param task
+   *   The task to wait for.
+   *
+   * @return the mined block.
+   */
+  static Block await(MiningTask task) {
+    try {
+      return task.join();
+    } catch (CompletionException e) {
+      throw unwrap(e);
+    } finally {
+      task.cancel(false);
+    } // try-catch-finally
+  } // await(MiningTask)
+
+  /**
+   * Wait a while for a task.
+   *
+   * @param task
+   *   The task to wait for.
+   * @param interval
+   *   How long to wait.
+   *
+   * @return the mined block.
+   *
+   * @throws TimeoutException
+   *   If the task is still running after the interval.
+   * @throws InterruptedException
+   *   If the thread is interrupted while waiting.
+   */
+  static Block await(MiningTask task, Duration interval)
+      throws TimeoutException, InterruptedException {
+    try {
+      return task.get(interval.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException e) {
+      throw unwrap(e);
+    } // try-catch
+  } // await(MiningTask, Duration)
+
+  /**
+   * Get the unchecked exception behind a failed task.
+   *
+   * @param e
+   *   The exception reported by the task.
+   *
+   * @return an unchecked exception to throw.
+   */
+  static RuntimeException unwrap(Exception e) {
+    if (e.getCause() instanceof RuntimeException) {
+      return (RuntimeException) e.getCause();
+    } // if
+    return new IllegalStateException(e.getCause());
+  } // unwrap(Exception)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of worker threads.
+   *
+   * @return the number of threads used for each search.
+   */
+  public int getThreads() {
+    return this.threads;
+  } // getThreads()
+
+  /**
+   * Start or continue mining the block of a session in the background.
+   * Each range of the session gets its own worker, so sessions should have
+   * no more ranges than the miner has threads. The session records the
+   * progress of the workers as they go.
+   *
+   * @param session
+   *   The session to continue.
+   * @param check
+   *   The validator used to check the block.
+   *
+   * @return the task, which completes with a block whose hash is valid.
+   */
+  public MiningTask mineAsync(MiningSession session, HashValidator check) {
+    MiningTask task = new MiningTask(session, check);
+    for (int i = 0; i < session.getRanges(); i++) {
+      int range = i;
+      this.pool.execute(() -> {
+        try {
+          search(task, range);
+        } catch (RuntimeException e) {
+          // A validator that fails should not leave the caller waiting.
+          task.completeExceptionally(e);
+        } // try-catch
+      });
+    } // for
+    return task;
+  } // mineAsync(MiningSession, HashValidator)
+
+  /**
+   * Start mining a block with the given contents in the background.
+   * Cancelling the returned task stops the search.
+   *
+   * @param num
+   *   The number of the block.
+   * @param trans
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   * @param check
+   *   The validator used to check the block.
+   *
+   * @return the task, which completes with a block whose hash is valid.
+   */
+  public MiningTask mineAsync(int num, Transaction trans, Hash prevHash,
+      HashValidator check) {
+    return mineAsync(new MiningSession(num, trans, prevHash, this.threads,
+        new Random().nextLong()), check);
+  } // mineAsync(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Mine a block with the given contents, choosing a nonce that meets
+   * the requirements of the validator.
+   *
+   * @param num
+   *   The number of the block.
+   * @param trans
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   * @param check
+   *   The validator used to check the block.
+   *
+   * @return a block whose hash is valid.
+   *
+   * @throws IllegalStateException if no nonce in the whole space is valid.
+   */
+  public Block mine(int num, Transaction trans, Hash prevHash,
+      HashValidator check) {
+    return await(mineAsync(num, trans, prevHash, check));
+  } // mine(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Mine the block of a session, saving the session to a file at regular
+   * intervals so that the search can be resumed with MiningSession.load
+   * if it is interrupted.
+   *
+   * @param session
+   *   The session to continue.
+   * @param check
+   *   The validator used to check the block.
+   * @param checkpoint
+   *   Where to save the session.
+   * @param interval
+   *   How often to save the session.
+   *
+   * @return a block whose hash is valid.
+   *
+   * @throws IOException
+   *   If the session cannot be saved.
+   * @throws InterruptedException
+   *   If the thread is interrupted while waiting; the session is saved
+   *   first.
+   * @throws IllegalStateException if no nonce in the session is valid.
+   */
+  public Block mine(MiningSession session, HashValidator check, Path checkpoint,
+      Duration interval) throws IOException, InterruptedException {
+    MiningTask task = mineAsync(session, check);
+    try {
+      while (true) {
+        try {
+          return await(task, interval);
+        } catch (TimeoutException e) {
+          session.save(checkpoint);
+        } // try-catch
+      } // while
+    } catch (InterruptedException e) {
+      task.cancel(false);
+      session.save(checkpoint);
+      throw e;
+    } // try-catch
+  } // mine(MiningSession, HashValidator, Path, Duration)
+} // class Miner
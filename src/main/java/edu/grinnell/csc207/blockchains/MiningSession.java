@@ -0,0 +1,277 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The state of a search for one block. The nonce space is split into
+ * ranges that are walked in order, one worker per range, so no nonce is
+ * tried twice. Sessions can be saved to disk while mining and loaded
+ * again later to pick up where they left off.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class MiningSession {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The first int in every saved session.
+   */
+  static final int MAGIC = 0x4d696e65;
+
+  /**
+   * The version of the saved format.
+   */
+  static final int VERSION = 2;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of the block being mined.
+   */
+  int blockNum;
+
+  /**
+   * The transaction of the block being mined.
+   */
+  Transaction transaction;
+
+  /**
+   * The hash of the block that the mined block will follow.
+   */
+  Hash previousHash;
+
+  /**
+   * The next nonce to try in each range.
+   */
+  long[] next;
+
+  /**
+   * The number of nonces left to try in each range, treated as unsigned.
+   */
+  long[] remaining;
+
+  /**
+   * The number of nonces tried so far, across every run of the session.
+   */
+  long attempts;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new session that splits the nonces into the given number of
+   * ranges, starting from 0.
+   *
+   * @param num
+   *   The number of the block.
+   * @param trans
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   * @param ranges
+   *   The number of ranges; use one per worker thread.
+   */
+  public MiningSession(int num, Transaction trans, Hash prevHash, int ranges) {
+    this(num, trans, prevHash, ranges, 0);
+  } // MiningSession(int, Transaction, Hash, int)
+
+  /**
+   * Create a new session that splits the nonces into the given number of
+   * ranges, starting from the given nonce.
+   *
+   * @param num
+   *   The number of the block.
+   * @param trans
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   * @param ranges
+   *   The number of ranges.
+   * @param base
+   *   The first nonce of the first range.
+   */
+  MiningSession(int num, Transaction trans, Hash prevHash, int ranges,
+      long base) {
+    if (ranges < 1) {
+      throw new IllegalArgumentException("Sessions need at least one range");
+    } // if
+    this.blockNum = num;
+    this.transaction = trans;
+    this.previousHash = prevHash;
+    this.next = new long[ranges];
+    this.remaining = new long[ranges];
+    long span = Long.divideUnsigned(-1L, ranges);
+    for (int i = 0; i < ranges; i++) {
+      this.next[i] = base + span * i;
+      this.remaining[i] = span;
+    } // for
+    // The last range also takes the few nonces left over by the division.
+    this.remaining[ranges - 1] = -1L - span * (ranges - 1);
+  } // MiningSession(int, Transaction, Hash, int, long)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Record the progress of a worker.
+   *
+   * @param range
+   *   The range the worker is walking.
+   * @param nonce
+   *   The next nonce the worker would try.
+   * @param left
+   *   The number of nonces left in the range.
+   * @param tried
+   *   The number of nonces tried since the last report.
+   */
+  synchronized void advance(int range, long nonce, long left, long tried) {
+    this.next[range] = nonce;
+    this.remaining[range] = left;
+    this.attempts += tried;
+  } // advance(int, long, long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of the block being mined.
+   *
+   * @return the number of the block.
+   */
+  public int getNum() {
+    return this.blockNum;
+  } // getNum()
+
+  /**
+   * Get the transaction of the block being mined.
+   *
+   * @return the transaction.
+   */
+  public Transaction getTransaction() {
+    return this.transaction;
+  } // getTransaction()
+
+  /**
+   * Get the hash of the block that the mined block will follow.
+   *
+   * @return the previous hash.
+   */
+  public Hash getPrevHash() {
+    return this.previousHash;
+  } // getPrevHash()
+
+  /**
+   * Get the number of ranges.
+   *
+   * @return the number of ranges.
+   */
+  public int getRanges() {
+    return this.next.length;
+  } // getRanges()
+
+  /**
+   * Get the number of nonces tried so far, including those tried before
+   * the session was saved and loaded.
+   *
+   * @return the number of attempts.
+   */
+  public synchronized long getAttempts() {
+    return this.attempts;
+  } // getAttempts()
+
+  /**
+   * Save the session. The block being mined is saved in its encoding
+   * (see BlockCodec), with 0 for the nonce. The file is replaced
+   * atomically, so a crash while saving leaves the previous checkpoint
+   * intact.
+   *
+   * @param file
+   *   Where to save the session.
+   *
+   * @throws IOException
+   *   If the session cannot be written.
+   */
+  public synchronized void save(Path file) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      int length = BlockCodec.prefixLength(this.transaction, this.previousHash) + Long.BYTES;
+      ByteBuffer block = ByteBuffer.allocate(length);
+      BlockCodec.encodePrefix(block, this.blockNum, this.transaction, this.previousHash);
+      block.putLong(0);
+      out.writeInt(length);
+      out.write(block.array());
+      out.writeLong(this.attempts);
+      out.writeInt(this.next.length);
+      for (int i = 0; i < this.next.length; i++) {
+        out.writeLong(this.next[i]);
+        out.writeLong(this.remaining[i]);
+      } // for
+    } // try
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  } // save(Path)
+
+  /**
+   * Load a saved session.
+   *
+   * @param file
+   *   Where the session was saved.
+   *
+   * @return the session.
+   *
+   * @throws IOException
+   *   If the file cannot be read or is not a saved session.
+   */
+  public static MiningSession load(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+        throw new IOException(file + " is not a saved mining session");
+      } // if
+      int length = in.readInt();
+      if (length < 0) {
+        throw new IOException(file + " holds a malformed block");
+      } // if
+      byte[] encoded = new byte[length];
+      in.readFully(encoded);
+      Block blk;
+      try {
+        blk = BlockCodec.decode(ByteBuffer.wrap(encoded));
+      } catch (IllegalArgumentException e) {
+        throw new IOException(file + " holds a malformed block", e);
+      } // try-catch
+      long attempts = in.readLong();
+      int ranges = in.readInt();
+      if (ranges < 1) {
+        throw new IOException(file + " has no ranges");
+      } // if
+      MiningSession session = new MiningSession(blk.getNum(), blk.getTransaction(),
+          blk.getPrevHash(), ranges);
+      session.attempts = attempts;
+      for (int i = 0; i < ranges; i++) {
+        session.next[i] = in.readLong();
+        session.remaining[i] = in.readLong();
+      } // for
+      return session;
+    } // try
+  } // load(Path)
+} // class MiningSession
@@ -0,0 +1,190 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A search for a block that is still in progress. The task completes
+ * with the mined block. Cancelling it, or completing it in any other
+ * way, stops every worker searching for it.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class MiningTask extends CompletableFuture<Block> {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of the block being mined.
+   */
+  int blockNum;
+
+  /**
+   * The transaction of the block being mined.
+   */
+  Transaction transaction;
+
+  /**
+   * The hash of the block that the mined block will follow.
+   */
+  Hash previousHash;
+
+  /**
+   * The validator the block must satisfy.
+   */
+  HashValidator validator;
+
+  /**
+   * The ranges of nonces being searched.
+   */
+  MiningSession session;
+
+  /**
+   * The number of nonces tried so far.
+   */
+  LongAdder attempts;
+
+  /**
+   * The number of workers that have not yet given up.
+   */
+  int searching;
+
+  /**
+   * The number of workers that have started and not yet finished.
+   */
+  int active;
+
+  /**
+   * The block found by the winning worker, or null if none has been
+   * found yet. The task completes with it once every worker that started
+   * has counted its attempts.
+   */
+  volatile Block found;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new task for mining the block of a session, with one worker
+   * per range.
+   *
+   * @param mining
+   *   The session to continue.
+   * @param check
+   *   The validator the block must satisfy.
+   */
+  MiningTask(MiningSession mining, HashValidator check) {
+    this.blockNum = mining.getNum();
+    this.transaction = mining.getTransaction();
+    this.previousHash = mining.getPrevHash();
+    this.validator = check;
+    this.session = mining;
+    this.attempts = new LongAdder();
+    this.searching = mining.getRanges();
+  } // MiningTask(MiningSession, HashValidator)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determine whether workers should stop searching.
+   *
+   * @return true if a block has been found or the task is done.
+   */
+  boolean stopped() {
+    return (this.found != null) || isDone();
+  } // stopped()
+
+  /**
+   * Note that a worker is starting.
+   *
+   * @return true if it should search, false if the search is over.
+   */
+  synchronized boolean start() {
+    if (stopped()) {
+      return false;
+    } // if
+    this.active++;
+    return true;
+  } // start()
+
+  /**
+   * Record the block found by a worker. Only the first block counts.
+   *
+   * @param blk
+   *   The block.
+   */
+  synchronized void found(Block blk) {
+    if (this.found == null) {
+      this.found = blk;
+    } // if
+  } // found(Block)
+
+  /**
+   * Note that a worker that started has stopped, after counting its
+   * attempts. Once the last such worker stops, the task completes with
+   * the block found; if every worker tried every nonce it was given
+   * without success, the task fails.
+   *
+   * @param gaveUp
+   *   Whether the worker tried every nonce it was given.
+   */
+  synchronized void finished(boolean gaveUp) {
+    if (gaveUp) {
+      this.searching--;
+    } // if
+    if (--this.active > 0) {
+      return;
+    } // if
+    if (this.found != null) {
+      complete(this.found);
+    } else if (this.searching == 0) {
+      completeExceptionally(new IllegalStateException("No valid nonce exists"));
+    } // if-else
+  } // finished(boolean)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of the block being mined.
+   *
+   * @return the number of the block.
+   */
+  public int getNum() {
+    return this.blockNum;
+  } // getNum()
+
+  /**
+   * Get the hash of the block that the mined block will follow.
+   *
+   * @return the previous hash.
+   */
+  public Hash getPrevHash() {
+    return this.previousHash;
+  } // getPrevHash()
+
+  /**
+   * Get the number of nonces tried so far by this task. Workers report
+   * in batches, so the count may lag slightly behind the work done.
+   *
+   * @return the number of attempts.
+   */
+  public long getAttempts() {
+    return this.attempts.sum();
+  } // getAttempts()
+
+  /**
+   * Get the session this task continues.
+   *
+   * @return the session.
+   */
+  public MiningSession getSession() {
+    return this.session;
+  } // getSession()
+} // class MiningTask
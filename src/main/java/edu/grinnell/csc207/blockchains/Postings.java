@@ -0,0 +1,217 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+/**
+ * For each user, the numbers of the blocks whose transaction names that
+ * user as source or target, in increasing order. Users are found by
+ * their IDs in a UserDictionary.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class Postings {
+  // +---------------+-----------------------------------------------
+  // | Local classes |
+  // +---------------+
+
+  /**
+   * The block numbers for one user.
+   */
+  static class Run {
+    /**
+     * The block numbers, with room to grow.
+     */
+    int[] nums = new int[4];
+
+    /**
+     * The number of block numbers.
+     */
+    int size;
+
+    /**
+     * Add a block number at the end.
+     *
+     * @param num
+     *   The block number.
+     */
+    void add(int num) {
+      if (this.size == this.nums.length) {
+        this.nums = Arrays.copyOf(this.nums, this.size * 2);
+      } // if
+      this.nums[this.size++] = num;
+    } // add(int)
+  } // class Run
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The IDs of the users.
+   */
+  UserDictionary users;
+
+  /**
+   * The block numbers for each user, by ID, or null for users not named
+   * by any block.
+   */
+  Run[] runs = new Run[16];
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create empty postings.
+   *
+   * @param dictionary
+   *   The IDs of the users.
+   */
+  Postings(UserDictionary dictionary) {
+    this.users = dictionary;
+  } // Postings(UserDictionary)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Record that a block names a user.
+   *
+   * @param id
+   *   The ID of the user, or UserDictionary.NONE.
+   * @param num
+   *   The number of the block.
+   */
+  void post(int id, int num) {
+    if (id == UserDictionary.NONE) {
+      return;
+    } // if
+    if (id >= this.runs.length) {
+      this.runs = Arrays.copyOf(this.runs, Math.max(id + 1, this.runs.length * 2));
+    } // if
+    if (this.runs[id] == null) {
+      this.runs[id] = new Run();
+    } // if
+    this.runs[id].add(num);
+  } // post(int, int)
+
+  /**
+   * Forget that the last block naming a user does so.
+   *
+   * @param id
+   *   The ID of the user, or UserDictionary.NONE.
+   * @param num
+   *   The number of the block.
+   */
+  void unpost(int id, int num) {
+    Run run = run(id);
+    if ((run != null) && (run.nums[run.size - 1] == num)) {
+      run.size--;
+      if (run.size == 0) {
+        this.runs[id] = null;
+      } // if
+    } // if
+  } // unpost(int, int)
+
+  /**
+   * Get the block numbers for a user.
+   *
+   * @param id
+   *   The ID of the user, or UserDictionary.NONE.
+   *
+   * @return the block numbers, or null if no block names the user.
+   */
+  Run run(int id) {
+    return ((id == UserDictionary.NONE) || (id >= this.runs.length)) ? null : this.runs[id];
+  } // run(int)
+
+  /**
+   * Find where a user's blocks reach a block number.
+   *
+   * @param run
+   *   The user's block numbers.
+   * @param num
+   *   The block number.
+   *
+   * @return the index of the first of the user's blocks numbered num or
+   *   more, or run.size if there is none.
+   */
+  static int search(Run run, int num) {
+    int lo = 0;
+    int hi = run.size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (run.nums[mid] < num) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      } // if-else
+    } // while
+    return lo;
+  } // search(Run, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Record the users named by a block added after every other block.
+   *
+   * @param t
+   *   The transaction in the block.
+   * @param num
+   *   The number of the block.
+   */
+  void add(Transaction t, int num) {
+    int source = this.users.intern(t.getSource());
+    int target = this.users.intern(t.getTarget());
+    post(source, num);
+    if (target != source) {
+      post(target, num);
+    } // if
+  } // add(Transaction, int)
+
+  /**
+   * Forget the users named by the last block added.
+   *
+   * @param source
+   *   The ID of the source of its transaction.
+   * @param target
+   *   The ID of the target of its transaction.
+   * @param num
+   *   The number of the block.
+   */
+  void remove(int source, int target, int num) {
+    unpost(source, num);
+    unpost(target, num);
+  } // remove(int, int, int)
+
+  /**
+   * Count the blocks that name a user.
+   *
+   * @param user
+   *   The user.
+   *
+   * @return the number of blocks.
+   */
+  int count(String user) {
+    Run run = run(this.users.find(user));
+    return (run == null) ? 0 : run.size;
+  } // count(String)
+
+  /**
+   * Get the number of one of the blocks that name a user.
+   *
+   * @param user
+   *   The user.
+   * @param i
+   *   Which of those blocks, counting from 0 in chain order.
+   *
+   * @return the block number.
+   */
+  int get(String user, int i) {
+    return run(this.users.find(user)).nums[i];
+  } // get(String, int)
+} // class Postings
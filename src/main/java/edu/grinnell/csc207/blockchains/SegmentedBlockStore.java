@@ -0,0 +1,151 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Blocks kept in fixed-size segments of an array. Growing only adds a
+ * segment, so blocks are never copied, and a block is found by number
+ * with a shift and a mask.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class SegmentedBlockStore implements BlockStore {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of blocks in each segment, as bits.
+   */
+  static final int SEGMENT_BITS = 12;
+
+  /**
+   * The number of blocks in each segment.
+   */
+  static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+  /**
+   * The mask for a block's place within its segment.
+   */
+  static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The segments. Only the first few are allocated.
+   */
+  Block[][] segments = new Block[16][];
+
+  /**
+   * The number of blocks stored.
+   */
+  int size;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make sure that a block number is in range.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @throws IndexOutOfBoundsException if it is not.
+   */
+  void checkIndex(int num) {
+    if ((num < 0) || (num >= this.size)) {
+      throw new IndexOutOfBoundsException("No block " + num + " in " + this.size);
+    } // if
+  } // checkIndex(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of blocks stored.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Get a block by number.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public Block get(int num) {
+    checkIndex(num);
+    return this.segments[num >>> SEGMENT_BITS][num & SEGMENT_MASK];
+  } // get(int)
+
+  /**
+   * Add a block after the last one.
+   *
+   * @param blk
+   *   The block to add.
+   */
+  public void add(Block blk) {
+    int seg = this.size >>> SEGMENT_BITS;
+    if (seg == this.segments.length) {
+      this.segments = Arrays.copyOf(this.segments, seg * 2);
+    } // if
+    if (this.segments[seg] == null) {
+      this.segments[seg] = new Block[SEGMENT_SIZE];
+    } // if
+    this.segments[seg][this.size & SEGMENT_MASK] = blk;
+    this.size++;
+  } // add(Block)
+
+  /**
+   * Remove the last block. Its segment is kept for the next block, even
+   * if it is now empty.
+   *
+   * @return the block removed.
+   *
+   * @throws IndexOutOfBoundsException if there are no blocks.
+   */
+  public Block removeLast() {
+    checkIndex(this.size - 1);
+    this.size--;
+    Block[] seg = this.segments[this.size >>> SEGMENT_BITS];
+    Block blk = seg[this.size & SEGMENT_MASK];
+    seg[this.size & SEGMENT_MASK] = null;
+    return blk;
+  } // removeLast()
+
+  /**
+   * Get an iterator for the blocks, from first to last.
+   *
+   * @return an iterator for the blocks.
+   */
+  public Iterator<Block> iterator() {
+    return new Iterator<Block>() {
+      int next = 0;
+
+      public boolean hasNext() {
+        return this.next < size;
+      } // hasNext()
+
+      public Block next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        return get(this.next++);
+      } // next()
+    };
+  } // iterator()
+} // class SegmentedBlockStore
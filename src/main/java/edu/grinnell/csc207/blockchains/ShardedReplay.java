@@ -0,0 +1,382 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Replays the transactions in a run of blocks into a ledger, checking
+ * that no source spends money it does not have. Each user's balance
+ * depends only on that user's own credits and debits, so one pass over
+ * the blocks splits them into a stream of deltas per shard of user IDs,
+ * and the shards check the running sums of their streams in parallel
+ * before they are merged into the ledger. The verdict and the resulting
+ * ledger are the same as applying the transactions one at a time.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class ShardedReplay {
+  // +---------------+-----------------------------------------------
+  // | Local classes |
+  // +---------------+
+
+  /**
+   * The deltas of the users in one shard, and their replay.
+   */
+  class Shard extends RecursiveAction {
+    /**
+     * The version of the serialized form, which tasks inherit.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The block of each delta, less from, shifted left one bit, with the
+     * low bit set for debits.
+     */
+    int[] codes = new int[16];
+
+    /**
+     * The slot of the user of each delta.
+     */
+    int[] slots = new int[16];
+
+    /**
+     * The amount of each delta.
+     */
+    int[] amounts = new int[16];
+
+    /**
+     * The number of deltas.
+     */
+    int length;
+
+    /**
+     * The user ID in each slot.
+     */
+    int[] ids = new int[16];
+
+    /**
+     * The number of slots.
+     */
+    int users;
+
+    /**
+     * The balance of the user in each slot, as of the block at stop.
+     */
+    int[] balances;
+
+    /**
+     * Whether the user in each slot has taken part in a transaction, as
+     * of the block at stop.
+     */
+    boolean[] known;
+
+    /**
+     * The block, less from, before which to stop.
+     */
+    int limit;
+
+    /**
+     * The block, less from, where the replay stopped.
+     */
+    int stop;
+
+    /**
+     * Whether the replay stopped because a source could not pay.
+     */
+    boolean failed;
+
+    /**
+     * Give a user a slot in this shard.
+     *
+     * @param id
+     *   The ID of the user.
+     *
+     * @return the slot.
+     */
+    int addUser(int id) {
+      if (this.users == this.ids.length) {
+        this.ids = Arrays.copyOf(this.ids, this.users * 2);
+      } // if
+      this.ids[this.users] = id;
+      return this.users++;
+    } // addUser(int)
+
+    /**
+     * Add a delta to the stream.
+     *
+     * @param code
+     *   The block, less from, shifted left, with the debit bit.
+     * @param slot
+     *   The slot of the user.
+     * @param amount
+     *   The amount.
+     */
+    void add(int code, int slot, int amount) {
+      if (this.length == this.codes.length) {
+        int size = this.length * 2;
+        this.codes = Arrays.copyOf(this.codes, size);
+        this.slots = Arrays.copyOf(this.slots, size);
+        this.amounts = Arrays.copyOf(this.amounts, size);
+      } // if
+      this.codes[this.length] = code;
+      this.slots[this.length] = slot;
+      this.amounts[this.length] = amount;
+      this.length++;
+    } // add(int, int, int)
+
+    /**
+     * Replay the deltas before the limit, stopping at the first source
+     * that cannot pay.
+     */
+    @Override
+    protected void compute() {
+      this.balances = new int[this.users];
+      this.known = new boolean[this.users];
+      for (int slot = 0; slot < this.users; slot++) {
+        int id = this.ids[slot];
+        this.known[slot] = ledger.isKnown(id);
+        this.balances[slot] = this.known[slot] ? ledger.balances[id] : 0;
+      } // for
+      this.failed = false;
+      for (int i = 0; i < this.length; i++) {
+        int block = this.codes[i] >>> 1;
+        if (block >= this.limit) {
+          break;
+        } // if
+        int slot = this.slots[i];
+        if ((this.codes[i] & 1) == 0) {
+          newTarget[block] = !this.known[slot];
+          this.balances[slot] = this.known[slot]
+              ? this.balances[slot] + this.amounts[i]
+              : this.amounts[i];
+          this.known[slot] = true;
+        } else {
+          int remaining = this.balances[slot] - this.amounts[i];
+          if (!this.known[slot] || (remaining < 0)) {
+            this.stop = block;
+            this.failed = true;
+            return;
+          } // if
+          this.balances[slot] = remaining;
+        } // if-else
+      } // for
+      this.stop = this.limit;
+    } // compute()
+  } // class Shard
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The blocks to replay.
+   */
+  BlockStore store;
+
+  /**
+   * The ledger to replay into.
+   */
+  Ledger ledger;
+
+  /**
+   * The number of the first block replayed.
+   */
+  int from;
+
+  /**
+   * The source ID of each block, by block number less from.
+   */
+  int[] sources;
+
+  /**
+   * The target ID of each block, by block number less from.
+   */
+  int[] targets;
+
+  /**
+   * The amount of each block, by block number less from.
+   */
+  int[] amounts;
+
+  /**
+   * Whether each block added its target to the ledger, by block number
+   * less from.
+   */
+  boolean[] newTarget;
+
+  /**
+   * The user IDs with slots, plus one, in an open-addressed table.
+   */
+  int[] table;
+
+  /**
+   * The slot of each user in the table.
+   */
+  int[] tableSlots;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a replay of some blocks into a ledger.
+   *
+   * @param blocks
+   *   The blocks to replay.
+   * @param into
+   *   The ledger to replay into.
+   */
+  ShardedReplay(BlockStore blocks, Ledger into) {
+    this.store = blocks;
+    this.ledger = into;
+  } // ShardedReplay(BlockStore, Ledger)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the slot of a user in its shard, giving it one if need be.
+   *
+   * @param id
+   *   The ID of the user.
+   * @param shard
+   *   The shard of the user.
+   *
+   * @return the slot.
+   */
+  int slot(int id, Shard shard) {
+    int mask = this.table.length - 1;
+    int i = (id * 0x9E3779B9) & mask;
+    while (this.table[i] != 0) {
+      if (this.table[i] == id + 1) {
+        return this.tableSlots[i];
+      } // if
+      i = (i + 1) & mask;
+    } // while
+    this.table[i] = id + 1;
+    this.tableSlots[i] = shard.addUser(id);
+    return this.tableSlots[i];
+  } // slot(int, Shard)
+
+  /**
+   * Split the blocks into a stream of deltas for each shard, in block
+   * order, with each block's credit before its debit as in Ledger.apply.
+   *
+   * @param end
+   *   The number of the block after the last one to replay.
+   * @param shards
+   *   The shards.
+   */
+  void split(int end, Shard[] shards) {
+    int count = end - this.from;
+    this.sources = new int[count];
+    this.targets = new int[count];
+    this.amounts = new int[count];
+    this.newTarget = new boolean[count];
+    this.table = new int[Integer.highestOneBit(Math.max(4 * count, 8)) * 2];
+    this.tableSlots = new int[this.table.length];
+    UserDictionary users = this.ledger.users;
+    for (int i = 0; i < count; i++) {
+      Transaction t = this.store.get(this.from + i).getTransaction();
+      int source = users.intern(t.getSource());
+      int target = users.intern(t.getTarget());
+      int amount = t.getAmount();
+      this.sources[i] = source;
+      this.targets[i] = target;
+      this.amounts[i] = amount;
+      if (target != UserDictionary.NONE) {
+        Shard shard = shards[target % shards.length];
+        shard.add(i << 1, slot(target, shard), amount);
+      } // if
+      if (source != UserDictionary.NONE) {
+        Shard shard = shards[source % shards.length];
+        shard.add((i << 1) | 1, slot(source, shard), amount);
+      } // if
+    } // for
+  } // split(int, Shard[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Replay a run of blocks into the ledger, stopping before the first
+   * block whose source cannot pay.
+   *
+   * @param start
+   *   The number of the first block to replay.
+   * @param end
+   *   The number of the block after the last one to replay.
+   * @param shardCount
+   *   The number of shards to split the users into.
+   *
+   * @return the number of the first block whose source cannot pay, or
+   *   end if every source can. The ledger then holds the blocks before
+   *   it.
+   */
+  int replay(int start, int end, int shardCount) {
+    this.from = start;
+    Shard[] shards = new Shard[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new Shard();
+      shards[i].limit = end - start;
+    } // for
+    split(end, shards);
+    ForkJoinTask.invokeAll(shards);
+
+    // Shards that went past the first failure, or that stopped part way
+    // through it, are replayed again up to it, from their own deltas.
+    int failure = end - start;
+    for (Shard shard : shards) {
+      failure = Math.min(failure, shard.stop);
+    } // for
+    ArrayList<Shard> reruns = new ArrayList<Shard>();
+    for (Shard shard : shards) {
+      if (shard.failed || (shard.stop > failure)) {
+        shard.limit = failure;
+        shard.reinitialize();
+        reruns.add(shard);
+      } // if
+    } // for
+    ForkJoinTask.invokeAll(reruns);
+
+    for (Shard shard : shards) {
+      for (int slot = 0; slot < shard.users; slot++) {
+        int id = shard.ids[slot];
+        if (shard.known[slot] && (!this.ledger.isKnown(id)
+            || (this.ledger.balances[id] != shard.balances[slot]))) {
+          this.ledger.setBalance(id, shard.balances[slot]);
+        } // if
+      } // for
+    } // for
+    for (int i = 0; i < failure; i++) {
+      this.ledger.applied(this.sources[i], this.targets[i], this.amounts[i],
+          this.newTarget[i]);
+    } // for
+    return start + failure;
+  } // replay(int, int, int)
+
+  /**
+   * Replay a run of blocks into the ledger, as in replay(int, int, int),
+   * with one shard per thread of the common pool when the run is long.
+   *
+   * @param start
+   *   The number of the first block to replay.
+   * @param end
+   *   The number of the block after the last one to replay.
+   *
+   * @return the number of the first block whose source cannot pay, or
+   *   end if every source can.
+   */
+  int replay(int start, int end) {
+    int count = (end - start <= ChainVerifier.CHUNK)
+        ? 1
+        : ForkJoinPool.getCommonPoolParallelism();
+    return replay(start, end, Math.max(1, count));
+  } // replay(int, int)
+} // class ShardedReplay
@@ -1,5 +1,7 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * A simple transaction.
  *
@@ -26,6 +28,16 @@ public class Transaction {
    */
   private int amount;
 
+  /**
+   * The encoded source, computed when first needed.
+   */
+  private byte[] sourceBytes;
+
+  /**
+   * The encoded target, computed when first needed.
+   */
+  private byte[] targetBytes;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -47,6 +59,54 @@ public class Transaction {
     this.amount = amt;
   } // Transaction(src)
 
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the UTF-8 bytes of the source, as encoded. Callers must not change them.
+   *
+   * @return the encoded source.
+   */
+  byte[] sourceBytes() {
+    if (this.sourceBytes == null) {
+      this.sourceBytes = this.source.getBytes(StandardCharsets.UTF_8);
+    } // if
+    return this.sourceBytes;
+  } // sourceBytes()
+
+  /**
+   * Get the UTF-8 bytes of the target, as encoded. Callers must not change them.
+   *
+   * @return the encoded target.
+   */
+  byte[] targetBytes() {
+    if (this.targetBytes == null) {
+      this.targetBytes = this.target.getBytes(StandardCharsets.UTF_8);
+    } // if
+    return this.targetBytes;
+  } // targetBytes()
+
+  /**
+   * Share the dictionary's copies of the source and target names, and
+   * of their bytes, rather than keeping copies of our own.
+   *
+   * @param users
+   *   The dictionary.
+   */
+  void intern(UserDictionary users) {
+    int src = users.intern(this.source);
+    if (src != UserDictionary.NONE) {
+      this.source = users.name(src);
+      this.sourceBytes = users.bytes(src);
+    } // if
+    int tgt = users.intern(this.target);
+    if (tgt != UserDictionary.NONE) {
+      this.target = users.name(tgt);
+      this.targetBytes = users.bytes(tgt);
+    } // if
+  } // intern(UserDictionary)
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
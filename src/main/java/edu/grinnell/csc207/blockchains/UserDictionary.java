@@ -0,0 +1,183 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dense int IDs for user names, so that per-user data can live in
+ * arrays indexed by ID. Each name is kept once, with its encoded bytes,
+ * and transactions share those copies once they are interned. IDs are
+ * never reused, even if every block naming a user is removed.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+class UserDictionary {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The ID of the empty user, which is never stored.
+   */
+  static final int NONE = -1;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * One more than the ID of the name in each slot, or 0 for an empty
+   * slot. The length is a power of two.
+   */
+  int[] slots = new int[16];
+
+  /**
+   * The name with each ID.
+   */
+  String[] names = new String[8];
+
+  /**
+   * The encoded bytes of each name, computed when first needed.
+   */
+  byte[][] encoded = new byte[8][];
+
+  /**
+   * The number of names.
+   */
+  int size;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the slot where a name would be stored if there were no
+   * collisions.
+   *
+   * @param name
+   *   The name.
+   * @param mask
+   *   One less than the number of slots.
+   *
+   * @return the slot.
+   */
+  static int home(String name, int mask) {
+    int h = name.hashCode() * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  } // home(String, int)
+
+  /**
+   * Find the slot holding a name, or the empty slot where it belongs.
+   *
+   * @param name
+   *   The name.
+   *
+   * @return the slot.
+   */
+  int slot(String name) {
+    int mask = this.slots.length - 1;
+    int i = home(name, mask);
+    while (this.slots[i] != 0) {
+      String other = this.names[this.slots[i] - 1];
+      if ((other == name) || other.equals(name)) {
+        return i;
+      } // if
+      i = (i + 1) & mask;
+    } // while
+    return i;
+  } // slot(String)
+
+  /**
+   * Double the number of slots.
+   */
+  void grow() {
+    int[] bigger = new int[this.slots.length * 2];
+    int mask = bigger.length - 1;
+    for (int id = 0; id < this.size; id++) {
+      int i = home(this.names[id], mask);
+      while (bigger[i] != 0) {
+        i = (i + 1) & mask;
+      } // while
+      bigger[i] = id + 1;
+    } // for
+    this.slots = bigger;
+  } // grow()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the ID of a name, adding the name if it is new.
+   *
+   * @param name
+   *   The name.
+   *
+   * @return its ID, or NONE for the empty name.
+   */
+  int intern(String name) {
+    if (name.isEmpty()) {
+      return NONE;
+    } // if
+    int i = slot(name);
+    if (this.slots[i] != 0) {
+      return this.slots[i] - 1;
+    } // if
+    if (this.size == this.names.length) {
+      this.names = Arrays.copyOf(this.names, this.size * 2);
+      this.encoded = Arrays.copyOf(this.encoded, this.size * 2);
+    } // if
+    int id = this.size++;
+    this.names[id] = name;
+    this.slots[i] = id + 1;
+    if (2 * this.size > this.slots.length) {
+      grow();
+    } // if
+    return id;
+  } // intern(String)
+
+  /**
+   * Get the ID of a name without adding it. Any number of threads may
+   * look names up, as long as none is interning.
+   *
+   * @param name
+   *   The name.
+   *
+   * @return its ID, or NONE if the name is empty or unknown.
+   */
+  int find(String name) {
+    if (name.isEmpty()) {
+      return NONE;
+    } // if
+    return this.slots[slot(name)] - 1;
+  } // find(String)
+
+  /**
+   * Get the name with an ID.
+   *
+   * @param id
+   *   The ID, or NONE.
+   *
+   * @return the name.
+   */
+  String name(int id) {
+    return (id == NONE) ? "" : this.names[id];
+  } // name(int)
+
+  /**
+   * Get the encoded bytes of the name with an ID. Callers must not
+   * change them.
+   *
+   * @param id
+   *   The ID.
+   *
+   * @return the bytes.
+   */
+  byte[] bytes(int id) {
+    if (this.encoded[id] == null) {
+      this.encoded[id] = this.names[id].getBytes(StandardCharsets.UTF_8);
+    } // if
+    return this.encoded[id];
+  } // bytes(int)
+} // class UserDictionary
@@ -1,6 +1,14 @@
 package edu.grinnell.csc207.main;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 import edu.grinnell.csc207.blockchains.Block;
@@ -28,6 +36,9 @@ public class BlockChainUI {
         balance: finds a user's balance
         transactions: prints out the chain of transactions
         blocks: prints out the chain of blocks (for debugging only)
+        export: writes the chain to a file (.ndjson for text, else binary)
+        import: replaces the chain with one read from a file (only when
+          the chain is not kept in a file)
         help: prints this list of commands
         quit: quits the program""");
   } // printInstructions(PrintWriter)
@@ -62,11 +73,72 @@ public class BlockChainUI {
     return (new Transaction(source, recepient, val));
   } // promptTransaction(Printwriter, Scanner)
 
+  /**
+   * Determine whether a file holds a chain as text rather than binary.
+   *
+   * @param file
+   *   The file.
+   *
+   * @return true if its name ends in .ndjson or .jsonl.
+   */
+  private static boolean isText(Path file) {
+    String name = file.getFileName().toString();
+    return name.endsWith(".ndjson") || name.endsWith(".jsonl");
+  } // isText(Path)
+
+  /**
+   * Write a chain to a file.
+   *
+   * @param chain
+   *   The chain.
+   * @param file
+   *   The file, whose name picks the format.
+   *
+   * @throws IOException
+   *   If the file cannot be written.
+   */
+  private static void exportChain(BlockChain chain, Path file) throws IOException {
+    if (isText(file)) {
+      try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        chain.exportText(out);
+      } // try
+    } else {
+      try (OutputStream out = Files.newOutputStream(file)) {
+        chain.exportBinary(out);
+      } // try
+    } // if-else
+  } // exportChain(BlockChain, Path)
+
+  /**
+   * Read a chain from a file.
+   *
+   * @param file
+   *   The file, whose name picks the format.
+   * @param check
+   *   The validator used to check elements.
+   *
+   * @return the chain.
+   *
+   * @throws IOException
+   *   If the file cannot be read or does not hold a valid chain.
+   */
+  private static BlockChain importChain(Path file, HashValidator check) throws IOException {
+    if (isText(file)) {
+      try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        return BlockChain.importText(in, check);
+      } // try
+    } else {
+      try (InputStream in = Files.newInputStream(file)) {
+        return BlockChain.importBinary(in, check);
+      } // try
+    } // if-else
+  } // importChain(Path, HashValidator)
+
   /**
    * Run the UI.
    *
    * @param args
-   *   Command -line arguments.
+   *   Command -line arguments: optionally, a file to keep the chain in.
    */
   public static void main(String[] args) {
     HashValidator standardValidator = (hash) -> (hash.length() >= 3) && (hash.get(0) == 0);
@@ -75,7 +147,15 @@ public class BlockChainUI {
     PrintWriter pen = new PrintWriter(System.out, true); // Create a writing object
     printInstructions(pen);
 
-    BlockChain currentChain = new BlockChain(standardValidator);
+    BlockChain currentChain;
+    try {
+      currentChain = (args.length > 0)
+          ? BlockChain.open(Path.of(args[0]), standardValidator)
+          : new BlockChain(standardValidator);
+    } catch (IOException e) {
+      pen.println("\ncould not open " + args[0] + ": " + e.getMessage());
+      return;
+    } // try-catch
 
     boolean running = true;
     while (running) {
@@ -155,6 +235,31 @@ public class BlockChainUI {
         while (blks.hasNext()) {
           pen.println(blks.next());
         } // while
+      } else if (commandLine.equals("export")) {
+        pen.printf("File: ");
+        String fileName = eyes.nextLine();
+        try {
+          exportChain(currentChain, Path.of(fileName));
+          pen.printf("wrote %d blocks to %s", currentChain.getSize(), fileName);
+        } catch (IOException | RuntimeException e) {
+          pen.print("could not export the chain: " + e.getMessage());
+        } // try-catch
+      } else if (commandLine.equals("import") && (args.length > 0)) {
+        // The imported chain would live only in memory, and the file
+        // would quietly keep the old one.
+        pen.printf("cannot import while the chain is kept in %s; "
+            + "start without a file to import", args[0]);
+      } else if (commandLine.equals("import")) {
+        pen.printf("File: ");
+        String fileName = eyes.nextLine();
+        try {
+          BlockChain imported = importChain(Path.of(fileName), standardValidator);
+          currentChain.close();
+          currentChain = imported;
+          pen.printf("read %d blocks from %s", currentChain.getSize(), fileName);
+        } catch (IOException | RuntimeException e) {
+          pen.print("could not import the chain: " + e.getMessage());
+        } // try-catch
       } else if (commandLine.equals("transactions")) {
         Iterator<Transaction> trans = currentChain.iterator();
         trans.next();
@@ -166,5 +271,10 @@ public class BlockChainUI {
       } // if-else
     } // while loop to perpetually take commands
     eyes.close();
+    try {
+      currentChain.close();
+    } catch (IOException e) {
+      pen.println("could not save the chain: " + e.getMessage());
+    } // try-catch
   } // main()
 } // class BlockChainUI
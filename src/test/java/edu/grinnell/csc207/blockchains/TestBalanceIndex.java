@@ -0,0 +1,70 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our BalanceIndex class.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestBalanceIndex {
+  /**
+   * Users stay in order of balance and ID as they are added, moved, and
+   * removed.
+   */
+  @Test
+  public void orderTest() {
+    Random rand = new Random(207);
+    BalanceIndex index = new BalanceIndex();
+    int[] balances = new int[500];
+    boolean[] present = new boolean[balances.length];
+    for (int round = 0; round < 20000; round++) {
+      int id = rand.nextInt(balances.length);
+      int balance = (rand.nextInt(4) == 0)
+          ? rand.nextInt() : rand.nextInt(21) - 10;
+      if (!present[id]) {
+        index.add(id, balance);
+        present[id] = true;
+        balances[id] = balance;
+      } else if (rand.nextInt(3) == 0) {
+        index.remove(id, balances[id]);
+        present[id] = false;
+      } else {
+        index.move(id, balances[id], balance);
+        balances[id] = balance;
+      } // if-else
+    } // for
+
+    ArrayList<Long> expected = new ArrayList<Long>();
+    for (int id = 0; id < balances.length; id++) {
+      if (present[id]) {
+        expected.add(BalanceIndex.key(id, balances[id]));
+      } // if
+    } // for
+    expected.sort(null);
+    assertEquals(expected.size(), index.size(), "M: number of users");
+    for (int rank = 0; rank < expected.size(); rank++) {
+      assertEquals((int) (long) expected.get(rank), index.select(rank), "M: rank " + rank);
+    } // for
+    for (int balance = -11; balance <= 11; balance++) {
+      int below = 0;
+      for (long key : expected) {
+        if ((key >> 32) < balance) {
+          below++;
+        } // if
+      } // for
+      assertEquals(below, index.rank(balance), "M: users below " + balance);
+    } // for
+    assertEquals(0, index.rank(Integer.MIN_VALUE), "M: nobody below the minimum");
+    assertEquals(index.size(), index.rank(Integer.MAX_VALUE + 1L), "M: everybody below");
+    assertThrows(IndexOutOfBoundsException.class, () -> index.select(index.size()),
+        "E: past the last rank");
+  } // orderTest()
+} // class TestBalanceIndex
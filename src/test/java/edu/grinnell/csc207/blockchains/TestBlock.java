@@ -1,12 +1,17 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -70,7 +75,20 @@ public class TestBlock {
   } // longToBytes()
 
   /**
-   * Compute the expected hash of a block.
+   * Feed a length and then some bytes to the digest.
+   *
+   * @param bytes
+   *   The bytes.
+   */
+  static void updateWithLength(byte[] bytes) {
+    md.update(intToBytes(bytes.length));
+    md.update(bytes);
+  } // updateWithLength(byte[])
+
+  /**
+   * Compute the expected hash of a block: the digest of its number, its
+   * length-prefixed UTF-8 names, its amount, its length-prefixed previous
+   * hash, and its nonce.
    *
    * @param block
    *   The block whose hash we want to compute.
@@ -79,10 +97,10 @@ public class TestBlock {
    */
   static byte[] expectedHash(Block block) {
     md.update(intToBytes(block.getNum()));
-    md.update(block.getTransaction().getSource().getBytes());
-    md.update(block.getTransaction().getTarget().getBytes());
+    updateWithLength(block.getTransaction().getSource().getBytes(StandardCharsets.UTF_8));
+    updateWithLength(block.getTransaction().getTarget().getBytes(StandardCharsets.UTF_8));
     md.update(intToBytes(block.getTransaction().getAmount()));
-    md.update(block.getPrevHash().getBytes());
+    updateWithLength(block.getPrevHash().getBytes());
     md.update(longToBytes(block.getNonce()));
     return md.digest();
   } // expectedHash()
@@ -228,6 +246,81 @@ public class TestBlock {
         "M: correct hash in validated block");
   } // validatedHashTest()
 
+  /**
+   * Ensure that hashing from a saved prefix gives exactly the hash
+   * of the whole block, even when the prefix is long.
+   */
+  @Test
+  public void midstateHashTest() throws Exception {
+    String longName = "A rather long user name that fills a digest block ".repeat(3);
+    Transaction t = new Transaction(longName, "Sky" + longName, 250);
+    Hash ph = new Hash(new byte[32]);
+    BlockHasher hasher = new BlockHasher();
+    hasher.prime(17, t, ph);
+    for (long nonce = -3; nonce < 50; nonce += 7) {
+      Block b = new Block(17, t, ph, nonce);
+      assertArrayEquals(expectedHash(b), hasher.digest(nonce),
+          "M: midstate hash is the expected hash");
+    } // for
+  } // midstateHashTest()
+
+  /**
+   * Ensure that rehashing blocks does not allocate once warmed up.
+   */
+  @Test
+  public void noAllocationTest() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long me = Thread.currentThread().getId();
+    Block b = new Block(3, new Transaction("Rebel", "Sky", 250),
+        new Hash(new byte[] {42, 42, 42}), 99);
+    BlockHasher hasher = new BlockHasher();
+    hasher.prime(3, b.getTransaction(), b.getPrevHash());
+    int attempts = 100000;
+    boolean matches = true;
+    for (int i = 0; i < attempts; i++) {
+      matches &= b.hashMatches();
+      hasher.digest(i);
+    } // for
+    long before = threads.getThreadAllocatedBytes(me);
+    for (int i = 0; i < attempts; i++) {
+      matches &= b.hashMatches();
+      hasher.digest(i);
+    } // for
+    long after = threads.getThreadAllocatedBytes(me);
+    assertTrue(matches, "M: block hash matches its contents");
+    // Even one small object per attempt would be 16 or more bytes apiece;
+    // anything less is the measurement itself.
+    assertTrue(after - before < attempts,
+        "M: " + (after - before) + " bytes allocated for " + attempts + " attempts");
+  } // noAllocationTest()
+
+  /**
+   * Ensure that a block's encoding decodes to the same block, and that
+   * the block's hash is the digest of its encoding.
+   */
+  @Test
+  public void encodingTest() throws Exception {
+    Block b = new Block(7, new Transaction("Zoë", "Ω", 12), new Hash(new byte[32]), -5);
+    byte[] bytes = b.encode();
+    assertEquals(4 + 4 + 4 + 4 + 2 + 4 + 4 + 32 + 8, bytes.length,
+        "M: names are encoded as UTF-8");
+    assertArrayEquals(b.getHash().getBytes(), MessageDigest.getInstance("sha-256").digest(bytes),
+        "M: the hash is the digest of the encoding");
+    Block c = Block.decode(bytes);
+    assertEquals(b.getNum(), c.getNum(), "M: number");
+    assertEquals(b.getTransaction(), c.getTransaction(), "M: transaction");
+    assertEquals(b.getPrevHash(), c.getPrevHash(), "M: previous hash");
+    assertEquals(b.getNonce(), c.getNonce(), "M: nonce");
+    assertEquals(b.getHash(), c.getHash(), "M: hash");
+    assertThrows(IllegalArgumentException.class,
+        () -> Block.decode(Arrays.copyOf(bytes, bytes.length - 1)),
+        "E: truncated encoding");
+    assertThrows(IllegalArgumentException.class,
+        () -> Block.decode(Arrays.copyOf(bytes, bytes.length + 1)),
+        "E: trailing bytes");
+  } // encodingTest()
+
   /**
    * Ensure that we can create the standard initial block.
    */
@@ -1,12 +1,21 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -460,9 +469,322 @@ public class TestBlockChain {
     Iterator<Block> blocks = chain.blocks();
     blocks.next();
     blocks.next().transaction = new Transaction("", "F", 1000);
-    assertEquals(1010, chain.balance("F"), "E: F's balance in modified chain");
-    assertFalse(chain.isCorrect(), "E: modified chain is incorrect");
-    assertCheckFails(chain, "E: modified chain is incorrect");
+    assertEquals(110, chain.balance("F"),
+        "E: F's balance is what was appended, not the modified block");
+    assertTrue(chain.isCorrect(), "E: blocks already checked are not re-examined");
+    assertFalse(chain.isCorrect(true), "E: modified chain is incorrect");
+    assertThrows(Exception.class, () -> chain.check(true), "E: modified chain is incorrect");
   } // testModifiedChain()
 
+  /**
+   * Mine in the background.
+   */
+  @Test
+  public void testMineAsync() throws Exception {
+    HashValidator v =
+        (hash) ->
+            (hash.length() >= 2) && (hash.get(0) == 4) && (hash.get(1) == 4);
+    BlockChain chain = new BlockChain(v);
+    MiningTask task = chain.mineAsync(new Transaction("", "A", 10));
+    Block block = task.get(10, TimeUnit.SECONDS);
+    assertTrue(v.isValid(block.getHash()), "M: async block is valid");
+    assertTrue(task.getAttempts() > 0, "M: async attempts are counted");
+    chain.append(block);
+    assertEquals(2, chain.getSize(), "M: async block can be appended");
+  } // testMineAsync()
+
+  /**
+   * Background mining gives up at its deadline.
+   */
+  @Test
+  public void testMineAsyncTimeout() throws Exception {
+    AtomicBoolean easy = new AtomicBoolean(true);
+    BlockChain chain = new BlockChain((hash) -> easy.get());
+    easy.set(false);
+    MiningTask task = chain.mineAsync(new Transaction("", "A", 10),
+        Duration.ofMillis(100));
+    ExecutionException e = assertThrows(ExecutionException.class,
+        () -> task.get(10, TimeUnit.SECONDS), "E: mining past the deadline");
+    assertTrue(e.getCause() instanceof TimeoutException, "E: reason is the deadline");
+  } // testMineAsyncTimeout()
+
+  /**
+   * Background mining stops when the end of the chain changes.
+   */
+  @Test
+  public void testMineAsyncInvalidated() throws Exception {
+    AtomicBoolean easy = new AtomicBoolean(true);
+    Set<Hash> known = ConcurrentHashMap.newKeySet();
+    BlockChain chain = new BlockChain((hash) -> easy.get() || known.contains(hash));
+    Block block = chain.mine(new Transaction("", "A", 10));
+    known.add(block.getHash());
+    easy.set(false);
+
+    MiningTask task = chain.mineAsync(new Transaction("", "B", 10));
+    assertFalse(task.isDone(), "M: search is running");
+    chain.append(block);
+    assertTrue(task.isCancelled(), "M: append cancels the search");
+
+    task = chain.mineAsync(new Transaction("", "B", 10));
+    assertTrue(chain.removeLast(), "M: remove the block");
+    assertTrue(task.isCancelled(), "M: removeLast cancels the search");
+  } // testMineAsyncInvalidated()
+
+  /**
+   * Long chains can be built and read by block number, and blocks must
+   * follow the last block.
+   */
+  @Test
+  public void testLongChain() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true);
+    Block middle = null;
+    for (int i = 1; i < 20000; i++) {
+      Block b = new Block(i, new Transaction("", "A", 1), chain.getHash(), 0);
+      chain.append(b);
+      if (i == 10000) {
+        middle = b;
+      } // if
+    } // for
+    assertEquals(20000, chain.getSize(), "M: size of a long chain");
+    assertEquals(19999, chain.getLastBlock().getNum(), "M: last block of a long chain");
+    assertAppendFails(chain, new Block(10001, new Transaction("", "A", 1), middle.getHash(), 0),
+        "E: block that does not follow the last block");
+    assertEquals(20000, chain.getSize(), "E: failed append leaves the size");
+    chain.check();
+  } // testLongChain()
+
+  /**
+   * Balances only change when a block is accepted or removed.
+   */
+  @Test
+  public void testBalanceAfterFailedAppend() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    Block stale = new Block(1, new Transaction("", "B", 50), chain.getHash(), 0);
+    assertAppendFails(chain, stale, "E: block that does not follow the last block");
+    assertEquals(100, chain.balance("A"), "E: A after failed append");
+    assertEquals(0, chain.balance("B"), "E: B after failed append");
+    assertArrayEquals(new String[] {"A"}, users(chain), "E: users after failed append");
+    chain.check();
+    assertEquals(100, chain.balance("A"), "M: check leaves the balances");
+  } // testBalanceAfterFailedAppend()
+
+  /**
+   * Removing blocks restores the balances and users from before they
+   * were appended.
+   */
+  @Test
+  public void testRollback() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    chain.append(chain.mine(new Transaction("A", "B", 10)));
+    for (int i = 0; i < 100; i++) {
+      chain.append(chain.mine(new Transaction("B", "U" + i, 1)));
+      chain.append(chain.mine(new Transaction("", "B", 1)));
+    } // for
+    chain.append(chain.mine(new Transaction("A", "A", 5)));
+    assertEquals(90, chain.balance("A"), "M: A before rollback");
+    assertEquals(102, users(chain).length, "M: users before rollback");
+    for (int i = 0; i < 201; i++) {
+      assertTrue(chain.removeLast(), "M: remove block " + i);
+    } // for
+    assertEquals(90, chain.balance("A"), "M: A after rollback");
+    assertEquals(10, chain.balance("B"), "M: B after rollback");
+    assertEquals(0, chain.balance("U0"), "M: U0 after rollback");
+    assertArrayEquals(new String[] {"A", "B"}, users(chain), "M: users after rollback");
+    chain.check();
+  } // testRollback()
+
+  /**
+   * Checks resume from the last verified block.
+   */
+  @Test
+  public void testIncrementalCheck() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    chain.append(chain.mine(new Transaction("A", "B", 60)));
+    chain.check();
+    assertEquals(3, chain.verified, "M: every block is verified");
+
+    chain.append(chain.mine(new Transaction("A", "C", 60)));
+    assertCheckFails(chain, "E: A transferred too much");
+    assertEquals(3, chain.verified, "E: the bad block is not verified");
+    assertCheckFails(chain, "E: A still transferred too much");
+
+    assertTrue(chain.removeLast(), "E: remove the bad block");
+    assertTrue(chain.removeLast(), "M: remove a verified block");
+    assertEquals(2, chain.verified, "M: removing lowers the verified height");
+    chain.append(chain.mine(new Transaction("A", "C", 60)));
+    chain.check();
+    assertEquals(3, chain.verified, "M: replacement block is verified");
+    chain.check(true);
+    assertEquals(3, chain.verified, "M: full rescan verifies every block");
+  } // testIncrementalCheck()
+
+  /**
+   * Blocks can be found by hash.
+   */
+  @Test
+  public void testFindBlock() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true);
+    Block first = chain.getLastBlock();
+    Block second = chain.mine(new Transaction("", "A", 10));
+    chain.append(second);
+    Block third = chain.mine(new Transaction("A", "B", 5));
+    chain.append(third);
+    assertEquals(first, chain.findBlock(first.getHash()), "M: first block");
+    assertEquals(second, chain.findBlock(third.getPrevHash()), "M: previous block");
+    assertEquals(third, chain.findBlock(third.getHash()), "M: last block");
+    assertTrue(chain.removeLast(), "M: remove the last block");
+    assertEquals(null, chain.findBlock(third.getHash()), "M: removed block");
+    assertEquals(second, chain.findBlock(second.getHash()), "M: remaining block");
+  } // testFindBlock()
+
+  /**
+   * Users' histories can be read a page at a time.
+   */
+  @Test
+  public void testHistory() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    for (int i = 0; i < 10; i++) {
+      chain.append(chain.mine(new Transaction("A", "B" + (i % 2), 1)));
+    } // for
+    chain.append(chain.mine(new Transaction("B0", "B0", 1)));
+    assertEquals(11, chain.historySize("A"), "M: A's history");
+    assertEquals(6, chain.historySize("B0"), "M: B0's history, self-transfer once");
+    assertEquals(0, chain.historySize("C"), "M: C's history");
+
+    Iterator<Block> page = chain.history("A", 4, 3);
+    for (int num = 5; num <= 7; num++) {
+      assertEquals(num, page.next().getNum(), "M: A's page holds block " + num);
+    } // for
+    assertFalse(page.hasNext(), "M: A's page ends");
+    page = chain.history("B1", 3, 10);
+    assertEquals(9, page.next().getNum(), "M: B1's fourth block");
+    assertEquals(11, page.next().getNum(), "M: B1's fifth block");
+    assertFalse(page.hasNext(), "M: B1's history ends");
+    assertFalse(chain.history("C", 0, 10).hasNext(), "M: C has no history");
+    assertThrows(IllegalArgumentException.class, () -> chain.history("A", -1, 1),
+        "E: negative offset");
+
+    assertTrue(chain.removeLast(), "M: remove the self-transfer");
+    assertTrue(chain.removeLast(), "M: remove a transfer to B1");
+    assertEquals(10, chain.historySize("A"), "M: A's history after removing");
+    assertEquals(4, chain.historySize("B1"), "M: B1's history after removing");
+    assertEquals(5, chain.historySize("B0"), "M: B0's history after removing");
+  } // testHistory()
+
+  /**
+   * Past balances match the balances seen as the chain grew, whichever
+   * checkpoint they start from.
+   */
+  @Test
+  public void testBalanceAt() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, new Miner(1), 3);
+    int[] seen = new int[20];
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    seen[1] = 100;
+    for (int num = 2; num < seen.length; num++) {
+      if (num % 5 == 0) {
+        chain.append(chain.mine(new Transaction("A", "A", 7)));
+      } else if (num % 2 == 0) {
+        chain.append(chain.mine(new Transaction("A", "B", num)));
+      } else {
+        chain.append(chain.mine(new Transaction("B", "A", 1)));
+      } // if-else
+      seen[num] = chain.balance("A");
+    } // for
+    for (int num = 0; num < seen.length; num++) {
+      assertEquals(seen[num], chain.balanceAt("A", num), "M: A's balance at block " + num);
+      assertEquals((num == 0) ? 0 : 100, seen[num] + chain.balanceAt("B", num),
+          "M: A and B's balances at block " + num);
+    } // for
+    assertEquals(0, chain.balanceAt("C", 19), "M: unknown user");
+    assertEquals(0, chain.balanceAt("", 19), "M: no user");
+
+    for (int i = 0; i < 5; i++) {
+      chain.removeLast();
+    } // for
+    chain.append(chain.mine(new Transaction("A", "C", 10)));
+    assertEquals(seen[14] - 10, chain.balanceAt("A", 15), "M: A after replacing blocks");
+    assertEquals(10, chain.balanceAt("C", 15), "M: C after replacing blocks");
+    assertEquals(seen[14], chain.balanceAt("A", 14), "M: A before the new block");
+    assertThrows(IllegalArgumentException.class, () -> chain.balanceAt("A", 16),
+        "E: past the last block");
+    assertThrows(IllegalArgumentException.class, () -> chain.balanceAt("A", -1),
+        "E: negative height");
+    assertThrows(IllegalArgumentException.class,
+        () -> new BlockChain((hash) -> true, new Miner(1), 0), "E: empty interval");
+  } // testBalanceAt()
+
+  /**
+   * Past balances stay right when checkpoints record only the users that
+   * changed, as blocks come and go across checkpoints.
+   */
+  @Test
+  public void testBalanceAtManyUsers() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true, new Miner(1), 4);
+    Random rand = new Random(207);
+    int[][] seen = new int[200][10];
+    for (int num = 1; num < seen.length; num++) {
+      if (rand.nextInt(4) == 0) {
+        int drop = Math.min(chain.getSize() - 1, 1 + rand.nextInt(6));
+        for (int i = 0; i < drop; i++) {
+          chain.removeLast();
+        } // for
+      } // if
+      String target = "U" + rand.nextInt(10);
+      String source = "U" + rand.nextInt(10);
+      if ((num < 10) || (chain.balance(source) == 0)) {
+        chain.append(chain.mine(new Transaction("", target, 1 + rand.nextInt(50))));
+      } else {
+        chain.append(chain.mine(new Transaction(source, target,
+            1 + rand.nextInt(chain.balance(source)))));
+      } // if-else
+      for (int u = 0; u < 10; u++) {
+        seen[chain.getSize() - 1][u] = chain.balance("U" + u);
+      } // for
+    } // for
+    for (int num = 0; num < chain.getSize(); num++) {
+      for (int u = 0; u < 10; u++) {
+        assertEquals(seen[num][u], chain.balanceAt("U" + u, num),
+            "M: U" + u + "'s balance at block " + num);
+      } // for
+    } // for
+  } // testBalanceAtManyUsers()
+
+  /**
+   * Users can be listed by balance, a page or a range at a time, as the
+   * balances change.
+   */
+  @Test
+  public void testUsersByBalance() throws Exception {
+    BlockChain chain = new BlockChain((hash) -> true);
+    chain.append(chain.mine(new Transaction("", "A", 50)));
+    chain.append(chain.mine(new Transaction("", "B", 30)));
+    chain.append(chain.mine(new Transaction("", "C", 40)));
+    chain.append(chain.mine(new Transaction("A", "D", 20)));
+    assertEquals("C B A D", String.join(" ", (Iterable<String>) () -> chain.topUsers(10)),
+        "M: all users by balance, later users first among equals");
+    assertEquals("C B", String.join(" ", (Iterable<String>) () -> chain.topUsers(2)),
+        "M: top two");
+    assertEquals("A", String.join(" ",
+        (Iterable<String>) () -> chain.usersByBalance(2, 1)), "M: third page of one");
+    assertFalse(chain.usersByBalance(4, 3).hasNext(), "M: page past the end");
+    assertEquals("C B A", String.join(" ",
+        (Iterable<String>) () -> chain.usersWithBalance(30, 40)), "M: balances 30 to 40");
+    assertFalse(chain.usersWithBalance(41, 100).hasNext(), "M: nobody that rich");
+    assertFalse(chain.usersWithBalance(40, 30).hasNext(), "M: empty range");
+
+    chain.append(chain.mine(new Transaction("C", "B", 25)));
+    assertEquals("B A D C", String.join(" ", (Iterable<String>) () -> chain.topUsers(4)),
+        "M: after a transfer");
+    assertTrue(chain.removeLast(), "M: remove the transfer");
+    assertTrue(chain.removeLast(), "M: remove the first transfer");
+    assertEquals("A C B", String.join(" ", (Iterable<String>) () -> chain.topUsers(10)),
+        "M: after removing blocks");
+    assertThrows(IllegalArgumentException.class, () -> chain.usersByBalance(0, -1),
+        "E: negative limit");
+  } // testUsersByBalance()
 } // class TestBlockChain
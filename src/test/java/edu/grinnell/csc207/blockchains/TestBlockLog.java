@@ -0,0 +1,150 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some simple tests of our BlockLog class and of chains kept in files.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestBlockLog {
+  /**
+   * Open a chain kept in a file, accepting every hash.
+   *
+   * @param file
+   *   The file.
+   *
+   * @return the chain.
+   *
+   * @throws IOException
+   *   If the file cannot be opened.
+   */
+  static BlockChain open(Path file) throws IOException {
+    return BlockChain.open(file, (hash) -> true, new Miner(1), 4);
+  } // open(Path)
+
+  /**
+   * Build a chain of a deposit and some transfers in a file and close it.
+   *
+   * @param file
+   *   The file.
+   * @param transfers
+   *   The number of transfers.
+   *
+   * @throws IOException
+   *   If the file cannot be written.
+   */
+  static void build(Path file, int transfers) throws IOException {
+    try (BlockChain chain = open(file)) {
+      chain.append(chain.mine(new Transaction("", "Alice", 100)));
+      for (int i = 0; i < transfers; i++) {
+        chain.append(chain.mine(new Transaction("Alice", "Bob", 1)));
+      } // for
+    } // try
+  } // build(Path, int)
+
+  /**
+   * Blocks appended and removed survive closing and opening the file.
+   */
+  @Test
+  public void reopenTest(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("chain.log");
+    build(file, 10);
+    Hash tip;
+    try (BlockChain chain = open(file)) {
+      assertEquals(12, chain.getSize(), "M: every block is read back");
+      assertEquals(90, chain.balance("Alice"), "M: Alice's balance");
+      assertEquals(10, chain.balance("Bob"), "M: Bob's balance");
+      assertTrue(chain.isCorrect(true), "M: the chain read back is correct");
+      assertTrue(chain.removeLast(), "M: remove a block");
+      assertTrue(chain.removeLast(), "M: remove another block");
+      chain.append(chain.mine(new Transaction("Bob", "Carol", 5)));
+      tip = chain.getHash();
+    } // try
+    try (BlockChain chain = open(file)) {
+      assertEquals(11, chain.getSize(), "M: removed blocks stay removed");
+      assertEquals(tip, chain.getHash(), "M: the last block is the new one");
+      assertEquals(5, chain.balance("Carol"), "M: Carol's balance");
+    } // try
+  } // reopenTest()
+
+  /**
+   * A record cut off part way is dropped, along with nothing else.
+   */
+  @Test
+  public void tornTailTest(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("torn.log");
+    build(file, 5);
+    long size = Files.size(file);
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(size - 3);
+    } // try
+    try (BlockChain chain = open(file)) {
+      assertEquals(6, chain.getSize(), "M: the torn block is dropped");
+      assertEquals(96, chain.balance("Alice"), "M: Alice's balance without it");
+      chain.append(chain.mine(new Transaction("Alice", "Bob", 50)));
+    } // try
+    try (BlockChain chain = open(file)) {
+      assertEquals(7, chain.getSize(), "M: blocks after the repair are kept");
+      assertEquals(46, chain.balance("Alice"), "M: Alice's balance after the repair");
+    } // try
+  } // tornTailTest()
+
+  /**
+   * A record whose contents do not match its checksum ends the log.
+   */
+  @Test
+  public void corruptRecordTest(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("corrupt.log");
+    build(file, 5);
+    long size = Files.size(file);
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(size - 1);
+      int last = raf.read();
+      raf.seek(size - 1);
+      raf.write(last ^ 1);
+    } // try
+    try (BlockChain chain = open(file)) {
+      assertEquals(6, chain.getSize(), "M: the corrupt block is dropped");
+    } // try
+    assertTrue(Files.size(file) < size, "M: the corrupt block is cut off");
+  } // corruptRecordTest()
+
+  /**
+   * Files that are not logs are not read as logs.
+   */
+  @Test
+  public void notALogTest(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("other.txt");
+    Files.writeString(file, "This is not a block log.");
+    assertThrows(IOException.class, () -> open(file), "E: not a block log");
+    assertEquals("This is not a block log.", Files.readString(file), "M: file untouched");
+    Path small = dir.resolve("small.txt");
+    Files.writeString(small, "Hi!");
+    assertThrows(IOException.class, () -> open(small), "E: shorter than a header");
+    assertEquals("Hi!", Files.readString(small), "M: short file untouched");
+  } // notALogTest()
+
+  /**
+   * A log of blocks that need hashes the validator rejects is refused.
+   */
+  @Test
+  public void rejectedBlockTest(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("rejected.log");
+    build(file, 3);
+    assertThrows(IOException.class,
+        () -> BlockChain.open(file, (hash) -> false, new Miner(1), 4),
+        "E: blocks that fail the validator");
+  } // rejectedBlockTest()
+} // class TestBlockLog
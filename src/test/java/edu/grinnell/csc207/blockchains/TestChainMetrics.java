@@ -0,0 +1,105 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Some simple tests of our ChainMetrics class.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestChainMetrics {
+  /**
+   * Histogram buckets cover every duration, in order.
+   */
+  @Test
+  public void bucketTest() {
+    for (long nanos = 0; nanos < 100000; nanos += 1 + nanos / 50) {
+      int bucket = ChainMetrics.Histogram.bucket(nanos);
+      assertTrue(nanos <= ChainMetrics.Histogram.upperBound(bucket),
+          "M: " + nanos + " fits in its bucket");
+      assertTrue((bucket == 0) || (nanos > ChainMetrics.Histogram.upperBound(bucket - 1)),
+          "M: " + nanos + " does not fit in the previous bucket");
+    } // for
+  } // bucketTest()
+
+  /**
+   * Percentiles are close to the durations recorded.
+   */
+  @Test
+  public void percentileTest() {
+    ChainMetrics.Histogram h = new ChainMetrics.Histogram();
+    assertEquals(0, h.percentile(50), "M: empty histogram");
+    for (int i = 1; i <= 1000; i++) {
+      h.record(i * 1000L);
+    } // for
+    assertTrue(Math.abs(h.percentile(50) - 500000) < 500000 / 8, "M: median");
+    assertTrue(Math.abs(h.percentile(99) - 990000) < 990000 / 8, "M: 99th percentile");
+    assertTrue(h.percentile(100) >= 1000000, "M: maximum");
+  } // percentileTest()
+
+  /**
+   * Mining, appending, and checking are counted.
+   */
+  @Test
+  public void countersTest() throws Exception {
+    HashValidator v = (hash) -> (hash.length() >= 1) && (hash.get(0) == 0);
+    BlockChain chain = new BlockChain(v);
+    ChainMetrics m = chain.getMetrics();
+    chain.append(chain.mine(new Transaction("", "A", 10)));
+    chain.append(chain.mine(new Transaction("A", "B", 5)));
+    Block bad = chain.mine(new Transaction("", "A", 10));
+    bad.hash = new Hash(new byte[] {1});
+    TestBlockChain.assertAppendFails(chain, bad, "E: invalid hash");
+    chain.check();
+
+    assertEquals(3, m.getBlocksMined(), "M: blocks mined");
+    assertTrue(m.getAttempts() >= 3, "M: attempts");
+    assertTrue(m.getHashRate() > 0, "M: hash rate");
+    assertTrue(m.getTimeToBlock(50) > 0, "M: median time to block");
+    assertTrue(m.getTimeToBlock(99) >= m.getTimeToBlock(50), "M: percentiles are ordered");
+    assertEquals(3, m.getAppends(), "M: appends, including the failure");
+    assertEquals(1, m.getValidatorRejections(), "M: rejected hashes");
+    assertEquals(1, m.getChecks(), "M: checks");
+    assertTrue(m.getCheckTime(50) > 0, "M: check time");
+  } // countersTest()
+
+  /**
+   * The same things are reported as JFR events.
+   */
+  @Test
+  public void eventsTest(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("chain.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(ChainMetrics.MinedEvent.class);
+      recording.enable(ChainMetrics.AppendEvent.class);
+      recording.enable(ChainMetrics.CheckEvent.class);
+      recording.start();
+      BlockChain chain = new BlockChain((hash) -> true);
+      chain.append(chain.mine(new Transaction("", "A", 10)));
+      chain.check();
+      recording.stop();
+      recording.dump(file);
+    } // try
+    Set<String> names = new HashSet<String>();
+    for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+      names.add(e.getEventType().getName());
+    } // for
+    assertTrue(names.contains("edu.grinnell.csc207.blockchains.BlockMined"), "M: mined");
+    assertTrue(names.contains("edu.grinnell.csc207.blockchains.BlockAppended"), "M: appended");
+    assertTrue(names.contains("edu.grinnell.csc207.blockchains.ChainChecked"), "M: checked");
+  } // eventsTest()
+} // class TestChainMetrics
@@ -0,0 +1,240 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some simple tests of sending segments of chains.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestChainSegment {
+  /**
+   * A validator that accepts every hash.
+   */
+  static final HashValidator ANY = (hash) -> true;
+
+  /**
+   * Add a deposit or some transfers to a chain.
+   *
+   * @param chain
+   *   The chain.
+   * @param transfers
+   *   The number of transfers.
+   */
+  static void grow(BlockChain chain, int transfers) {
+    if (chain.getSize() == 1) {
+      chain.append(chain.mine(new Transaction("", "Alice", 1000000)));
+    } // if
+    for (int i = 0; i < transfers; i++) {
+      chain.append(chain.mine(new Transaction("Alice", "Bob" + (i % 3), 1)));
+    } // for
+  } // grow(BlockChain, int)
+
+  /**
+   * Write a segment of a chain to bytes.
+   *
+   * @param chain
+   *   The chain.
+   * @param from
+   *   The first block.
+   * @param to
+   *   The block after the last.
+   *
+   * @return the bytes.
+   *
+   * @throws IOException
+   *   If the segment cannot be written.
+   */
+  static byte[] segment(BlockChain chain, int from, int to) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    chain.exportSegment(from, to, Channels.newChannel(out));
+    return out.toByteArray();
+  } // segment(BlockChain, int, int)
+
+  /**
+   * Receive a segment from bytes.
+   *
+   * @param chain
+   *   The chain.
+   * @param bytes
+   *   The segment.
+   *
+   * @return the number of blocks added.
+   *
+   * @throws IOException
+   *   If the segment is refused.
+   */
+  static int receive(BlockChain chain, byte[] bytes) throws IOException {
+    return chain.receiveSegment(Channels.newChannel(new ByteArrayInputStream(bytes)));
+  } // receive(BlockChain, byte[])
+
+  /**
+   * Copy the first blocks of a chain into a new chain.
+   *
+   * @param chain
+   *   The chain.
+   * @param count
+   *   The number of blocks.
+   * @param check
+   *   The validator of the new chain.
+   *
+   * @return the new chain.
+   *
+   * @throws IOException
+   *   If the blocks cannot be copied.
+   */
+  static BlockChain prefix(BlockChain chain, int count, HashValidator check)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ChainStream.writeBinary(IntStream.range(0, count).mapToObj(chain.store::get).iterator(),
+        out);
+    return BlockChain.importBinary(new ByteArrayInputStream(out.toByteArray()), check);
+  } // prefix(BlockChain, int, HashValidator)
+
+  /**
+   * A segment sent from a chain in a file, through a pipe, reaches a
+   * replica in another file and survives reopening it.
+   */
+  @Test
+  public void fileTest(@TempDir Path dir) throws Exception {
+    Path primaryFile = dir.resolve("primary.log");
+    Path replicaFile = dir.resolve("replica.log");
+    try (BlockChain primary = TestBlockLog.open(primaryFile)) {
+      grow(primary, 10);
+    } // try
+    Files.copy(primaryFile, replicaFile);
+    try (BlockChain primary = TestBlockLog.open(primaryFile);
+        BlockChain replica = TestBlockLog.open(replicaFile)) {
+      grow(primary, 25);
+      primary.sync();
+      Pipe pipe = Pipe.open();
+      CompletableFuture<Void> sent = CompletableFuture.runAsync(() -> {
+        try (Pipe.SinkChannel sink = pipe.sink()) {
+          primary.exportSegment(12, primary.getSize(), sink);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        } // try-catch
+      });
+      try (Pipe.SourceChannel source = pipe.source()) {
+        assertEquals(25, replica.receiveSegment(source), "M: every block received");
+      } // try
+      sent.join();
+      assertEquals(primary.getSize(), replica.getSize(), "M: same size");
+      assertEquals(primary.getHash(), replica.getHash(), "M: same last block");
+      assertEquals(primary.balance("Bob1"), replica.balance("Bob1"), "M: same balances");
+      assertTrue(replica.isCorrect(), "M: the replica checks out");
+    } // try
+    try (BlockChain replica = TestBlockLog.open(replicaFile)) {
+      assertEquals(37, replica.getSize(), "M: the received blocks are in the file");
+      assertTrue(replica.isCorrect(true), "M: the reopened replica checks out");
+    } // try
+    assertEquals(Files.size(primaryFile), Files.size(replicaFile), "M: the files match");
+  } // fileTest()
+
+  /**
+   * A chain kept in memory sends segments too, and a chain can receive
+   * them in pieces.
+   */
+  @Test
+  public void memoryTest() throws Exception {
+    BlockChain primary = new BlockChain(ANY, new Miner(1));
+    grow(primary, 3000);
+    BlockChain replica = prefix(primary, 6, ANY);
+    int size = replica.getSize();
+    assertEquals(0, receive(replica, segment(primary, size, size)), "M: empty segment");
+    assertEquals(1000, receive(replica, segment(primary, size, size + 1000)),
+        "M: first piece");
+    assertEquals(primary.getSize() - size - 1000,
+        receive(replica, segment(primary, size + 1000, primary.getSize())), "M: the rest");
+    assertEquals(primary.getHash(), replica.getHash(), "M: same last block");
+    assertEquals(primary.balance("Alice"), replica.balance("Alice"), "M: same balances");
+    assertTrue(replica.isCorrect(), "M: the replica checks out");
+    assertThrows(IndexOutOfBoundsException.class,
+        () -> segment(primary, 5, primary.getSize() + 1), "E: past the end");
+  } // memoryTest()
+
+  /**
+   * Segments that do not follow, are corrupt, or hold rejected blocks
+   * are refused, and leave the chain as it was.
+   */
+  @Test
+  public void refuseTest(@TempDir Path dir) throws Exception {
+    try (BlockChain primary = TestBlockLog.open(dir.resolve("primary.log"))) {
+      grow(primary, 20);
+      Hash bad = primary.store.hash(15);
+      BlockChain replica = prefix(primary, 10, (hash) -> !hash.equals(bad));
+      Hash tip = replica.getHash();
+      assertThrows(IOException.class, () -> receive(replica, segment(primary, 12, 20)),
+          "E: does not follow");
+      assertThrows(IOException.class, () -> receive(replica, segment(primary, 10, 20)),
+          "E: block 15 is rejected");
+      assertEquals(10, replica.getSize(), "M: nothing added after a rejected block");
+      assertEquals(tip, replica.getHash(), "M: the last block is unchanged");
+
+      byte[] good = segment(primary, 10, 15);
+      byte[] corrupt = Arrays.copyOf(good, good.length);
+      corrupt[corrupt.length - 12] ^= 1;
+      assertThrows(IOException.class, () -> receive(replica, corrupt), "E: corrupt record");
+      assertThrows(IOException.class,
+          () -> receive(replica, Arrays.copyOf(good, good.length - 3)), "E: cut short");
+      assertEquals(10, replica.getSize(), "M: nothing added from bad segments");
+      assertEquals(5, receive(replica, good), "M: a good segment is still taken");
+      assertEquals(primary.store.hash(14), replica.getHash(), "M: and ends at block 14");
+    } // try
+  } // refuseTest()
+
+  /**
+   * A block whose name is not well-formed UTF-8 is refused, so it never
+   * reaches the log, and the log still opens.
+   */
+  @Test
+  public void malformedNameTest(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("replica.log");
+    Hash tip;
+    try (BlockChain replica = TestBlockLog.open(file)) {
+      grow(replica, 3);
+      tip = replica.getHash();
+      ByteBuffer contents = ByteBuffer.allocate(256);
+      contents.putInt(replica.getSize()).putInt(0);
+      contents.putInt(2).put(new byte[] {(byte) 0xC3, (byte) 0x28}).putInt(5);
+      tip.writeTo(contents.putInt(tip.length())).putLong(0).flip();
+      Hash hash = new Hash(MessageDigest.getInstance("SHA-256").digest(
+          Arrays.copyOf(contents.array(), contents.limit())));
+      CRC32C crc = new CRC32C();
+      crc.update(contents.duplicate());
+      ByteBuffer header = ChainSegment.header(replica.getSize(), 1,
+          BlockLog.RECORD_HEADER + contents.limit(), tip, hash);
+      ByteBuffer bytes = ByteBuffer.allocate(header.remaining() + BlockLog.RECORD_HEADER
+          + contents.limit());
+      bytes.put(header).putInt(contents.limit()).putInt((int) crc.getValue()).put(contents);
+      assertThrows(IOException.class, () -> receive(replica, bytes.array()),
+          "E: the target is not UTF-8");
+      assertEquals(tip, replica.getHash(), "M: nothing added");
+    } // try
+    try (BlockChain replica = TestBlockLog.open(file)) {
+      assertEquals(5, replica.getSize(), "M: the log still opens");
+      assertEquals(tip, replica.getHash(), "M: and ends where it did");
+      assertTrue(replica.isCorrect(true), "M: the reopened log checks out");
+    } // try
+  } // malformedNameTest()
+} // class TestChainSegment
@@ -0,0 +1,248 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some simple tests of exporting and importing chains.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestChainStream {
+  /**
+   * A validator that accepts every hash.
+   */
+  static final HashValidator ANY = (hash) -> true;
+
+  /**
+   * Build a chain of a deposit and some transfers.
+   *
+   * @param transfers
+   *   The number of transfers.
+   *
+   * @return the chain.
+   */
+  static BlockChain build(int transfers) {
+    BlockChain chain = new BlockChain(ANY, new Miner(1));
+    chain.append(chain.mine(new Transaction("", "Zoë \"Z\"", 1000000)));
+    for (int i = 0; i < transfers; i++) {
+      chain.append(chain.mine(new Transaction("Zoë \"Z\"", "u\n" + (i % 7), i % 13)));
+    } // for
+    return chain;
+  } // build(int)
+
+  /**
+   * Make sure that two chains hold the same blocks.
+   *
+   * @param expected
+   *   The chain exported.
+   * @param actual
+   *   The chain imported.
+   */
+  static void assertSame(BlockChain expected, BlockChain actual) {
+    assertEquals(expected.getSize(), actual.getSize(), "M: same number of blocks");
+    assertEquals(expected.getHash(), actual.getHash(), "M: same last block");
+    for (int num = 0; num < expected.getSize(); num++) {
+      assertEquals(expected.store.get(num).toString(), actual.store.get(num).toString(),
+          "M: same block " + num);
+    } // for
+    for (int i = 0; i < 7; i++) {
+      assertEquals(expected.balance("u\n" + i), actual.balance("u\n" + i),
+          "M: same balance for user " + i);
+    } // for
+    int last = expected.getSize() - 1;
+    for (int num = 0; num <= last; num += 97) {
+      assertEquals(expected.balanceAt("Zoë \"Z\"", num), actual.balanceAt("Zoë \"Z\"", num),
+          "M: same past balance at " + num);
+    } // for
+    assertEquals(expected.historySize("u\n3"), actual.historySize("u\n3"),
+        "M: same history");
+  } // assertSame(BlockChain, BlockChain)
+
+  /**
+   * A chain longer than a batch survives a trip through the binary
+   * format.
+   */
+  @Test
+  public void binaryTest() throws Exception {
+    BlockChain chain = build(2500);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    chain.exportBinary(out);
+    BlockChain copy = BlockChain.importBinary(new ByteArrayInputStream(out.toByteArray()), ANY);
+    assertSame(chain, copy);
+    assertTrue(copy.isCorrect(true), "M: the imported chain is correct");
+    copy.append(copy.mine(new Transaction("u\n1", "v", 1)));
+    assertEquals(chain.getSize() + 1, copy.getSize(), "M: the import can grow");
+  } // binaryTest()
+
+  /**
+   * A chain survives a trip through the text format, one line a block.
+   */
+  @Test
+  public void textTest() throws Exception {
+    BlockChain chain = build(1100);
+    StringWriter out = new StringWriter();
+    chain.exportText(out);
+    String text = out.toString();
+    assertEquals(chain.getSize(), text.split("\n").length, "M: one line per block");
+    assertTrue(text.contains("\"source\":\"Zoë \\\"Z\\\"\",\"target\":\"u\\u000a1\""),
+        "M: names are escaped");
+    BlockChain copy = BlockChain.importText(new StringReader(text + "\n\n"), ANY);
+    assertSame(chain, copy);
+  } // textTest()
+
+  /**
+   * A chain can be imported into mapped files, which then open as the
+   * same chain.
+   */
+  @Test
+  public void mappedTest(@TempDir Path dir) throws Exception {
+    BlockChain chain = build(2500);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    chain.exportBinary(out);
+    byte[] bytes = out.toByteArray();
+    try (BlockChain copy = BlockChain.importBinary(new ByteArrayInputStream(bytes),
+        dir.resolve("binary"), ANY, new Miner(1))) {
+      assertSame(chain, copy);
+    } // try
+    try (BlockChain copy = BlockChain.openMapped(dir.resolve("binary"), ANY, new Miner(1))) {
+      assertSame(chain, copy);
+      assertTrue(copy.isCorrect(true), "M: the reopened chain is correct");
+    } // try
+    assertThrows(IOException.class, () -> BlockChain.importBinary(
+        new ByteArrayInputStream(bytes), dir.resolve("binary"), ANY, new Miner(1)),
+        "E: the files already hold blocks");
+
+    StringWriter text = new StringWriter();
+    chain.exportText(text);
+    try (BlockChain copy = BlockChain.importText(new StringReader(text.toString()),
+        dir.resolve("text"), ANY, new Miner(1))) {
+      assertSame(chain, copy);
+    } // try
+  } // mappedTest()
+
+  /**
+   * A failed import into mapped files leaves them empty, so the
+   * directory opens without blocks and can take another import.
+   */
+  @Test
+  public void mappedFailureTest(@TempDir Path dir) throws Exception {
+    BlockChain bad = new BlockChain(ANY, new Miner(1));
+    bad.append(bad.mine(new Transaction("", "A", 10)));
+    for (int i = 0; i < 4; i++) {
+      bad.append(bad.mine(new Transaction("A", "B", 1)));
+    } // for
+    bad.append(bad.mine(new Transaction("A", "B", 7)));
+    StringWriter text = new StringWriter();
+    bad.exportText(text);
+    assertThrows(IOException.class, () -> BlockChain.importText(
+        new StringReader(text.toString()), dir, ANY, new Miner(1)), "E: A cannot pay");
+    try (MappedBlockStore store = MappedBlockStore.open(dir)) {
+      assertEquals(0, store.size(), "M: no blocks are kept");
+    } // try
+
+    BlockChain chain = build(100);
+    StringWriter good = new StringWriter();
+    chain.exportText(good);
+    try (BlockChain copy = BlockChain.importText(new StringReader(good.toString()), dir,
+        ANY, new Miner(1))) {
+      assertSame(chain, copy);
+    } // try
+    try (BlockChain copy = BlockChain.openMapped(dir, ANY, new Miner(1))) {
+      assertSame(chain, copy);
+      assertTrue(copy.isCorrect(true), "M: the reused directory holds the new chain");
+    } // try
+  } // mappedFailureTest()
+
+  /**
+   * Streams that are cut short or tampered with are rejected.
+   */
+  @Test
+  public void malformedTest() throws Exception {
+    BlockChain chain = build(20);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    chain.exportBinary(out);
+    byte[] bytes = out.toByteArray();
+    assertThrows(IOException.class, () -> BlockChain.importBinary(
+        new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 10)), ANY),
+        "E: cut short");
+    assertThrows(IOException.class, () -> BlockChain.importBinary(
+        new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}), ANY),
+        "E: not a block stream");
+    byte[] store = ByteBuffer.allocate(8).putInt(MappedBlockStore.MAGIC)
+        .putInt(ChainStream.VERSION).array();
+    assertThrows(IOException.class,
+        () -> BlockChain.importBinary(new ByteArrayInputStream(store), ANY),
+        "E: the start of a mapped store");
+    assertThrows(IOException.class,
+        () -> BlockChain.importBinary(new ByteArrayInputStream(bytes), (hash) -> false),
+        "E: hashes the validator rejects");
+
+    StringWriter text = new StringWriter();
+    chain.exportText(text);
+    String[] lines = text.toString().split("\n");
+    String tampered = String.join("\n", lines).replace("\"amount\":5,", "\"amount\":6,");
+    assertThrows(IOException.class,
+        () -> BlockChain.importText(new StringReader(tampered), ANY), "E: hash disagrees");
+    String reordered = lines[0] + "\n" + lines[2] + "\n" + lines[1];
+    assertThrows(IOException.class,
+        () -> BlockChain.importText(new StringReader(reordered), ANY), "E: out of order");
+    assertThrows(IOException.class,
+        () -> BlockChain.importText(new StringReader(lines[0] + "\n{\"num\":1"), ANY),
+        "E: not JSON");
+    assertThrows(IOException.class,
+        () -> BlockChain.importText(new StringReader(""), ANY), "E: no blocks");
+  } // malformedTest()
+
+  /**
+   * A stream must start with an empty first block, like a mined one.
+   */
+  @Test
+  public void firstBlockTest() throws Exception {
+    Hash none = new Hash(new byte[] {});
+    Block[] firsts = new Block[] {
+      new Block(0, new Transaction("", "Mallory", 1000000), none, 0),
+      new Block(0, new Transaction("Mallory", "", 0), none, 0),
+      new Block(0, new Transaction("", "", 0), new Hash(new byte[] {1}), 0),
+    };
+    for (Block first : firsts) {
+      Block second = new Block(1, new Transaction("Mallory", "Bob", 10), first.getHash(), 0);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ChainStream.writeBinary(List.of(first, second).iterator(), out);
+      assertThrows(IOException.class,
+          () -> BlockChain.importBinary(new ByteArrayInputStream(out.toByteArray()), ANY),
+          "E: first block " + first);
+    } // for
+  } // firstBlockTest()
+
+  /**
+   * A source that spends more than it has makes the stream invalid.
+   */
+  @Test
+  public void overspendTest() throws Exception {
+    BlockChain chain = new BlockChain(ANY, new Miner(1));
+    chain.append(chain.mine(new Transaction("", "A", 10)));
+    chain.append(chain.mine(new Transaction("A", "B", 11)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    chain.exportBinary(out);
+    IOException e = assertThrows(IOException.class,
+        () -> BlockChain.importBinary(new ByteArrayInputStream(out.toByteArray()), ANY),
+        "E: A cannot pay");
+    assertTrue(e.getMessage().contains("block 2"), "M: the message names the block");
+  } // overspendTest()
+} // class TestChainStream
@@ -0,0 +1,77 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our ChainVerifier class.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestChainVerifier {
+  /**
+   * Build a correct run of blocks that accepts every hash.
+   *
+   * @param count
+   *   The number of blocks.
+   *
+   * @return the blocks.
+   */
+  static SegmentedBlockStore blocks(int count) {
+    SegmentedBlockStore store = new SegmentedBlockStore();
+    Hash prev = new Hash(new byte[] {});
+    for (int i = 0; i < count; i++) {
+      Block b = new Block(i, new Transaction("", "A", i), prev, 0);
+      store.add(b);
+      prev = b.getHash();
+    } // for
+    return store;
+  } // blocks(int)
+
+  /**
+   * A correct run has no failures, however it is split.
+   */
+  @Test
+  public void correctTest() {
+    SegmentedBlockStore store = blocks(1000);
+    for (int chunk : new int[] {1, 7, 1000}) {
+      ChainVerifier verifier = new ChainVerifier(store, (h) -> true, chunk);
+      assertNull(verifier.verify(0, 1000, new Hash(new byte[] {})), "M: chunks of " + chunk);
+      assertNull(verifier.verify(500, 1000, store.get(499).getHash()), "M: second half");
+    } // for
+  } // correctTest()
+
+  /**
+   * The lowest failing block is reported.
+   */
+  @Test
+  public void lowestFailureTest() {
+    SegmentedBlockStore store = blocks(1000);
+    store.get(800).transaction = new Transaction("", "A", 1);
+    store.get(373).transaction = new Transaction("", "A", 1);
+    store.get(374).previousHash = new Hash(new byte[] {1});
+    ChainVerifier verifier = new ChainVerifier(store, (h) -> true, 8);
+    ChainVerifier.Failure bad = verifier.verify(0, 1000, new Hash(new byte[] {}));
+    assertEquals(373, bad.num, "E: lowest failing block");
+    assertEquals("Hash is not valid for its contents", bad.message, "E: reason");
+    assertEquals(374, verifier.verify(374, 1000, store.get(373).getHash()).num,
+        "E: lowest failing block after the first");
+  } // lowestFailureTest()
+
+  /**
+   * Validator rejections are marked as such.
+   */
+  @Test
+  public void rejectedTest() {
+    SegmentedBlockStore store = blocks(100);
+    Hash reject = store.get(42).getHash();
+    ChainVerifier verifier = new ChainVerifier(store, (h) -> !h.equals(reject), 4);
+    ChainVerifier.Failure bad = verifier.verify(0, 100, new Hash(new byte[] {}));
+    assertEquals(42, bad.num, "E: rejected block");
+    assertTrue(bad.rejected, "E: rejected by the validator");
+  } // rejectedTest()
+} // class TestChainVerifier
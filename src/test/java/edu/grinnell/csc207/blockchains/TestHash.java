@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
 
@@ -106,5 +107,32 @@ public class TestHash {
     assertFalse(h.equals(new Hash(bytes)), 
        "M: a hash does not equal a hash made from its modified bytes");
   } // testReturnBytes
-  
+
+  /**
+   * 32-byte hashes behave like any other.
+   */
+  @Test
+  public void testWideHash() {
+    byte[] bytes = new byte[32];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i * 37 - 100);
+    } // for
+    Hash h = new Hash(bytes);
+    assertEquals(32, h.length(), "M: length of wide hash");
+    for (int i = 0; i < bytes.length; i++) {
+      assertEquals(bytes[i], h.get(i), "M: byte " + i + " of wide hash");
+    } // for
+    assertArrayEquals(bytes, h.getBytes(), "M: bytes of wide hash");
+    assertEquals(new Hash(bytes), h, "M: equal wide hashes");
+    assertEquals(new Hash(bytes).hashCode(), h.hashCode(), "M: equal hash codes");
+    assertEquals(64, h.toString().length(), "M: hex length of wide hash");
+    assertTrue(h.toString().startsWith("9CC1E60B"), "M: hex digits of wide hash");
+    assertTrue(h.matches(bytes, 0, 32), "M: matches its bytes");
+    bytes[31]++;
+    assertFalse(h.equals(new Hash(bytes)), "M: differs in the last byte");
+    assertFalse(h.matches(bytes, 0, 32), "M: does not match other bytes");
+    assertFalse(h.equals(new Hash(new byte[33])), "M: differs from a longer hash");
+    assertThrows(ArrayIndexOutOfBoundsException.class, () -> h.get(32),
+        "E: past the end of a wide hash");
+  } // testWideHash()
 } // class TestHash
@@ -0,0 +1,44 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our HashIndex class.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestHashIndex {
+  /**
+   * Blocks can be found by hash as they are added and removed.
+   */
+  @Test
+  public void addRemoveTest() {
+    Random rand = new Random(207);
+    SegmentedBlockStore store = new SegmentedBlockStore();
+    HashIndex index = new HashIndex(store);
+    for (int round = 0; round < 50; round++) {
+      int grow = rand.nextInt(400);
+      for (int i = 0; i < grow; i++) {
+        int num = store.size();
+        store.add(new Block(num, new Transaction("", "A", rand.nextInt()),
+            new Hash(new byte[] {}), 0));
+        index.add(num);
+      } // for
+      int shrink = rand.nextInt(store.size() + 1);
+      for (int i = 0; i < shrink; i++) {
+        index.remove(store.size() - 1);
+        store.removeLast();
+      } // for
+      assertEquals(store.size(), index.size, "M: entries in round " + round);
+      for (int i = 0; i < store.size(); i++) {
+        assertEquals(i, index.find(store.get(i).getHash()), "M: block " + i);
+      } // for
+    } // for
+    assertEquals(-1, index.find(new Hash(new byte[32])), "M: missing hash");
+  } // addRemoveTest()
+} // class TestHashIndex
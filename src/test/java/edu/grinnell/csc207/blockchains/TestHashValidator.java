@@ -0,0 +1,85 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our HashValidator interface.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestHashValidator {
+  /**
+   * Lambda validators also check raw digests.
+   */
+  @Test
+  public void lambdaTest() {
+    HashValidator v = (hash) -> (hash.length() >= 3) && (hash.get(0) == 0);
+    byte[] good = new byte[] {0, 5, 6};
+    byte[] bad = new byte[] {1, 5, 6};
+    assertTrue(v.isValid(good, 0, good.length), "M: whole array, valid");
+    assertFalse(v.isValid(bad, 0, bad.length), "M: whole array, invalid");
+    assertTrue(v.isValid(new byte[] {9, 0, 1, 2, 9}, 1, 3), "M: slice, valid");
+    assertFalse(v.isValid(new byte[] {0, 1, 2, 9}, 1, 3), "M: slice, invalid");
+    assertFalse(v.isValid(new byte[] {0, 1, 2}, 0, 2), "M: slice too short");
+  } // lambdaTest()
+
+  /**
+   * Lambda validators also check buffers, without moving them.
+   */
+  @Test
+  public void bufferTest() {
+    HashValidator v = (hash) -> (hash.length() >= 3) && (hash.get(0) == 0);
+    ByteBuffer heap = ByteBuffer.wrap(new byte[] {7, 0, 1, 2});
+    heap.position(1);
+    assertTrue(v.isValid(heap), "M: heap buffer, valid");
+    assertEquals(1, heap.position(), "M: heap buffer position unchanged");
+    ByteBuffer direct = ByteBuffer.allocateDirect(4).put(new byte[] {1, 2, 3, 4});
+    direct.flip();
+    assertFalse(v.isValid(direct), "M: direct buffer, invalid");
+    assertEquals(0, direct.position(), "M: direct buffer position unchanged");
+  } // bufferTest()
+
+  /**
+   * Prefix validators agree on hashes and raw digests.
+   */
+  @Test
+  public void startsWithTest() {
+    HashValidator v = HashValidator.startsWith((byte) 0, (byte) 7);
+    assertTrue(v.isValid(new Hash(new byte[] {0, 7, 3})), "M: valid hash");
+    assertFalse(v.isValid(new Hash(new byte[] {0, 6, 3})), "M: invalid hash");
+    assertFalse(v.isValid(new Hash(new byte[] {0})), "M: short hash");
+    assertTrue(v.isValid(new byte[] {4, 0, 7}, 1, 2), "M: valid slice");
+    assertFalse(v.isValid(new byte[] {0, 7}, 1, 1), "M: short slice");
+  } // startsWithTest()
+
+  /**
+   * Miners check raw digests and never build a Hash for a failed attempt.
+   */
+  @Test
+  public void minerUsesRawDigestsTest() {
+    int[] hashChecks = new int[] {0};
+    HashValidator prefix = HashValidator.startsWith((byte) 3);
+    HashValidator v = new HashValidator() {
+      public boolean isValid(Hash hash) {
+        hashChecks[0]++;
+        return prefix.isValid(hash);
+      } // isValid(Hash)
+
+      public boolean isValid(byte[] digest, int offset, int length) {
+        return prefix.isValid(digest, offset, length);
+      } // isValid(byte[], int, int)
+    };
+    Block b = new Miner(2).mine(1, new Transaction("", "A", 10),
+        new Hash(new byte[] {}), v);
+    assertEquals(3, b.getHash().get(0), "M: mined a valid block");
+    assertEquals(0, hashChecks[0], "M: no Hash was validated while mining");
+  } // minerUsesRawDigestsTest()
+} // class TestHashValidator
@@ -0,0 +1,100 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our Ledger class.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestLedger {
+  /**
+   * Get all the balances in a ledger.
+   *
+   * @param ledger
+   *   The ledger.
+   *
+   * @return a map from each user to their balance.
+   */
+  static HashMap<String, Integer> balances(Ledger ledger) {
+    HashMap<String, Integer> result = new HashMap<String, Integer>();
+    Iterator<String> users = ledger.users();
+    while (users.hasNext()) {
+      String user = users.next();
+      result.put(user, ledger.balance(user));
+    } // while
+    return result;
+  } // balances(Ledger)
+
+  /**
+   * Applying transactions moves money and reports missing funds.
+   */
+  @Test
+  public void applyTest() {
+    Ledger ledger = new Ledger();
+    assertTrue(ledger.apply(new Transaction("", "", 0)), "M: empty transaction");
+    assertFalse(ledger.users().hasNext(), "M: the empty user is not recorded");
+    assertTrue(ledger.apply(new Transaction("", "A", 100)), "M: deposit");
+    assertTrue(ledger.apply(new Transaction("A", "B", 30)), "M: transfer");
+    assertEquals(70, ledger.balance("A"), "M: A after transfer");
+    assertEquals(30, ledger.balance("B"), "M: B after transfer");
+    assertFalse(ledger.apply(new Transaction("B", "A", 40)), "E: overdraft");
+    assertEquals(-10, ledger.balance("B"), "E: overdraft is still applied");
+    assertFalse(ledger.apply(new Transaction("C", "A", 0)), "E: unknown source");
+    assertEquals(0, ledger.balance("D"), "E: unknown user");
+  } // applyTest()
+
+  /**
+   * Undoing transactions restores the balances and the users.
+   */
+  @Test
+  public void undoTest() {
+    Ledger ledger = new Ledger();
+    Transaction deposit = new Transaction("", "A", 100);
+    Transaction transfer = new Transaction("A", "B", 30);
+    Transaction self = new Transaction("C", "C", 5);
+    ledger.apply(deposit);
+    ledger.apply(transfer);
+    ledger.apply(self);
+    assertEquals(ledger.users.find("C"), ledger.lastSource(), "M: source of the last transaction");
+    ledger.undo();
+    assertFalse(ledger.has("C"), "M: C is forgotten");
+    ledger.undo();
+    assertEquals(100, ledger.balance("A"), "M: A after undo");
+    assertFalse(ledger.has("B"), "M: B is forgotten");
+    assertEquals(UserDictionary.NONE, ledger.lastSource(), "M: the deposit is left");
+    ledger.undo();
+    assertFalse(ledger.users().hasNext(), "M: no users are left");
+    assertThrows(IndexOutOfBoundsException.class, () -> ledger.undo(), "E: nothing to undo");
+  } // undoTest()
+
+  /**
+   * Ledgers that share a dictionary keep their own balances, and boxed
+   * balances are never needed.
+   */
+  @Test
+  public void sharedDictionaryTest() {
+    UserDictionary users = new UserDictionary();
+    Ledger first = new Ledger(users);
+    Ledger second = new Ledger(users);
+    for (int i = 0; i < 1000; i++) {
+      first.apply(new Transaction("", "U" + i, i));
+    } // for
+    second.apply(new Transaction("", "U999", 1));
+    assertEquals(999, first.balance("U999"), "M: first ledger");
+    assertEquals(1, second.balance("U999"), "M: second ledger");
+    assertEquals(0, second.balance("U0"), "M: user only in the first ledger");
+    assertEquals(1000, balances(first).size(), "M: users of the first ledger");
+    assertEquals(1, balances(second).size(), "M: users of the second ledger");
+    assertEquals(1000, users.size, "M: users in the dictionary");
+  } // sharedDictionaryTest()
+} // class TestLedger
@@ -0,0 +1,157 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some simple tests of our MappedBlockStore class and of chains kept in
+ * mapped files.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestMappedBlockStore {
+  /**
+   * Make a block whose names vary in length.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the block.
+   */
+  static Block block(int num) {
+    return new Block(num, new Transaction("s".repeat(num % 7), "té" + num, num),
+        new Hash(new byte[(num == 0) ? 0 : 32]), num * 31L);
+  } // block(int)
+
+  /**
+   * Blocks read back from the store equal the blocks added.
+   */
+  @Test
+  public void addGetTest(@TempDir Path dir) throws Exception {
+    MappedBlockStore store = MappedBlockStore.open(dir);
+    for (int num = 0; num < 1000; num++) {
+      store.add(block(num));
+    } // for
+    assertEquals(1000, store.size(), "M: size");
+    for (int num = 0; num < 1000; num++) {
+      Block expected = block(num);
+      Block actual = store.get(num);
+      assertEquals(num, actual.getNum(), "M: number of block " + num);
+      assertEquals(expected.getTransaction(), actual.getTransaction(),
+          "M: transaction of block " + num);
+      assertEquals(expected.getPrevHash(), actual.getPrevHash(), "M: previous hash " + num);
+      assertEquals(expected.getNonce(), actual.getNonce(), "M: nonce of block " + num);
+      assertEquals(expected.getHash(), actual.getHash(), "M: hash of block " + num);
+      assertEquals(expected.getHash(), store.hash(num), "M: hash alone " + num);
+      assertTrue(actual.hashMatches(), "M: block " + num + " hashes to its hash");
+    } // for
+    store.removeLast();
+    store.removeLast();
+    store.add(block(998));
+    assertEquals(999, store.size(), "M: size after removing");
+    assertEquals(block(998).getTransaction(), store.get(998).getTransaction(),
+        "M: block written in place of a removed one");
+    assertThrows(IndexOutOfBoundsException.class, () -> store.get(999), "E: past the end");
+    store.close();
+  } // addGetTest()
+
+  /**
+   * The iterator reuses one block, and blocks are encoded straight from
+   * the mapping as BlockCodec would encode them.
+   */
+  @Test
+  public void viewTest(@TempDir Path dir) throws Exception {
+    MappedBlockStore store = MappedBlockStore.open(dir);
+    for (int num = 0; num < 300; num++) {
+      store.add(block(num));
+    } // for
+    Iterator<Block> blocks = store.iterator();
+    Block first = blocks.next();
+    ByteBuffer direct = ByteBuffer.allocate(256);
+    for (int num = 1; num < 300; num++) {
+      Block expected = block(num);
+      Block actual = blocks.next();
+      assertSame(first, actual, "M: one block is reused");
+      assertEquals(num, actual.getNum(), "M: number of block " + num);
+      assertEquals(expected.getTransaction(), actual.getTransaction(),
+          "M: transaction of block " + num);
+      assertEquals(expected.getPrevHash(), actual.getPrevHash(), "M: previous hash " + num);
+      assertEquals(expected.getHash(), actual.getHash(), "M: hash of block " + num);
+      assertTrue(actual.hashMatches(), "M: block " + num + " hashes to its hash");
+      assertEquals(BlockCodec.length(expected), store.encodedLength(num),
+          "M: encoded length of block " + num);
+      assertArrayEquals(expected.encode(),
+          Arrays.copyOf(store.encode(num, direct.clear()).array(), direct.position()),
+          "M: encoding of block " + num);
+    } // for
+    assertFalse(blocks.hasNext(), "M: no more blocks");
+    store.close();
+  } // viewTest()
+
+  /**
+   * Blocks survive closing the store, and blocks added after the last
+   * sync do not survive a crash.
+   */
+  @Test
+  public void reopenTest(@TempDir Path dir) throws Exception {
+    MappedBlockStore store = MappedBlockStore.open(dir);
+    for (int num = 0; num < 100; num++) {
+      store.add(block(num));
+    } // for
+    store.close();
+
+    store = MappedBlockStore.open(dir);
+    assertEquals(100, store.size(), "M: every block is kept");
+    assertEquals(block(77).getTransaction(), store.get(77).getTransaction(),
+        "M: a block read back");
+    store.add(block(100));
+    store.add(block(101));
+    MappedBlockStore crashed = MappedBlockStore.open(dir);
+    assertEquals(100, crashed.size(), "M: unsynced blocks are not counted");
+    store.sync();
+    crashed.close();
+    crashed = MappedBlockStore.open(dir);
+    assertEquals(102, crashed.size(), "M: synced blocks are counted");
+    crashed.close();
+    store.close();
+  } // reopenTest()
+
+  /**
+   * Chains kept in mapped files come back as they were.
+   */
+  @Test
+  public void chainTest(@TempDir Path dir) throws Exception {
+    try (BlockChain chain = BlockChain.openMapped(dir, (hash) -> true, new Miner(1))) {
+      chain.append(chain.mine(new Transaction("", "Alice", 100)));
+      for (int i = 0; i < 10; i++) {
+        chain.append(chain.mine(new Transaction("Alice", "Bob", 3)));
+      } // for
+      assertTrue(chain.removeLast(), "M: remove a block");
+    } // try
+    try (BlockChain chain = BlockChain.openMapped(dir, (hash) -> true, new Miner(1))) {
+      assertEquals(11, chain.getSize(), "M: every block is kept");
+      assertEquals(73, chain.balance("Alice"), "M: Alice's balance");
+      assertEquals(27, chain.balance("Bob"), "M: Bob's balance");
+      assertEquals(10, chain.historySize("Alice"), "M: Alice's history");
+      Hash fifth = chain.history("Alice", 4, 1).next().getHash();
+      assertEquals(5, chain.findBlock(fifth).getNum(), "M: blocks can be found by hash");
+      assertTrue(chain.isCorrect(), "M: the chain is correct");
+    } // try
+    try (BlockChain chain = BlockChain.openMapped(dir, (hash) -> false, new Miner(1))) {
+      assertFalse(chain.isCorrect(), "M: the blocks fail a stricter validator");
+    } // try
+  } // chainTest()
+} // class TestMappedBlockStore
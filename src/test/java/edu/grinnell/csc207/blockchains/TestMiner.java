@@ -0,0 +1,193 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Some simple tests of our Miner class.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestMiner {
+  // +-------+-------------------------------------------------------
+  // | Setup |
+  // +-------+
+
+  /**
+   * Get things set up.
+   */
+  @BeforeAll
+  static void setup() {
+    TestBlock.setup();
+  } // setup()
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * A single-threaded miner finds a block the sequential path would accept.
+   */
+  @Test
+  public void singleThreadTest() {
+    HashValidator v = (h) -> (h.length() > 1) && (h.get(0) == 3) && (h.get(1) == 1);
+    Transaction t = new Transaction("Here", "There", 12);
+    Hash ph = new Hash(new byte[] {3, 4, 5});
+    Block b = new Miner(1).mine(4, t, ph, v);
+
+    assertTrue(v.isValid(b.getHash()), "M: mined hash is valid");
+    assertEquals(4, b.getNum(), "M: number of mined block");
+    assertEquals(t, b.getTransaction(), "M: transaction in mined block");
+    assertEquals(ph, b.getPrevHash(), "M: previous hash of mined block");
+    assertArrayEquals(TestBlock.expectedHash(b), b.getHash().getBytes(),
+        "M: mined hash matches contents");
+  } // singleThreadTest()
+
+  /**
+   * A many-threaded miner finds a block the sequential path would accept.
+   */
+  @Test
+  public void manyThreadTest() {
+    HashValidator v = (h) -> (h.length() > 1) && (h.get(0) == 1) && (h.get(1) == 7);
+    Transaction t = new Transaction("", "Deposited", 888);
+    Hash ph = new Hash(new byte[] {8, 8, 8});
+    Miner miner = new Miner(8);
+    assertEquals(8, miner.getThreads(), "R: thread count");
+    for (int i = 0; i < 4; i++) {
+      Block b = miner.mine(i, t, ph, v);
+      assertTrue(v.isValid(b.getHash()), "M: mined hash is valid");
+      assertEquals(i, b.getNum(), "M: number of mined block");
+      assertArrayEquals(TestBlock.expectedHash(b), b.getHash().getBytes(),
+          "M: mined hash matches contents");
+      assertEquals(b.getHash(), new Block(i, t, ph, b.getNonce()).getHash(),
+          "M: rebuilding from the nonce gives the same block");
+    } // for
+  } // manyThreadTest()
+
+  /**
+   * A failing validator is reported to the caller rather than hanging.
+   */
+  @Test
+  public void failingValidatorTest() {
+    HashValidator v = (h) -> {
+      throw new UnsupportedOperationException();
+    };
+    assertThrows(UnsupportedOperationException.class,
+        () -> new Miner(2).mine(1, new Transaction("", "A", 1),
+            new Hash(new byte[] {}), v),
+        "E: validator exceptions reach the caller");
+  } // failingValidatorTest()
+
+  /**
+   * Background searches report progress and stop when cancelled.
+   */
+  @Test
+  public void cancelTest() throws Exception {
+    MiningTask task = new Miner(2).mineAsync(1, new Transaction("", "A", 1),
+        new Hash(new byte[] {}), (h) -> false);
+    for (int i = 0; (i < 100) && (task.getAttempts() == 0); i++) {
+      Thread.sleep(20);
+    } // for
+    assertTrue(task.getAttempts() > 0, "M: attempts are reported");
+    assertTrue(task.cancel(true), "M: cancel a running search");
+    assertTrue(task.isCancelled(), "M: search is cancelled");
+    Thread.sleep(100);
+    long attempts = task.getAttempts();
+    Thread.sleep(100);
+    assertEquals(attempts, task.getAttempts(), "M: workers stop after cancel");
+  } // cancelTest()
+
+  /**
+   * Sessions walk their ranges in order, and a saved session picks up
+   * where it left off.
+   */
+  @Test
+  public void sessionTest(@TempDir Path dir) throws Exception {
+    Transaction t = new Transaction("Here", "There", 12);
+    Hash ph = new Hash(new byte[] {3, 4, 5});
+    MiningSession session = new MiningSession(7, t, ph, 2);
+    MiningTask task = new Miner(2).mineAsync(session, (h) -> false);
+    for (int i = 0; (i < 100) && (task.getAttempts() == 0); i++) {
+      Thread.sleep(20);
+    } // for
+    task.cancel(false);
+    Thread.sleep(100);
+    Path file = dir.resolve("session");
+    session.save(file);
+
+    MiningSession loaded = MiningSession.load(file);
+    assertEquals(7, loaded.getNum(), "M: number of loaded session");
+    assertEquals(t, loaded.getTransaction(), "M: transaction of loaded session");
+    assertEquals(ph, loaded.getPrevHash(), "M: previous hash of loaded session");
+    assertEquals(2, loaded.getRanges(), "M: ranges of loaded session");
+    assertEquals(session.getAttempts(), loaded.getAttempts(), "M: attempts so far");
+    assertArrayEquals(session.next, loaded.next, "M: progress of loaded session");
+    assertTrue(loaded.next[0] > 0, "M: first range made progress");
+
+    // With a validator that accepts anything, the next untried nonce wins.
+    Block b = new Miner(2).mineAsync(loaded, (h) -> true).get(10, TimeUnit.SECONDS);
+    assertTrue((b.getNonce() == session.next[0]) || (b.getNonce() == session.next[1]),
+        "M: resumed session does not revisit nonces");
+    assertArrayEquals(TestBlock.expectedHash(b), b.getHash().getBytes(),
+        "M: resumed session gives a correct block");
+  } // sessionTest()
+
+  /**
+   * Checkpointed mining saves the session as it goes.
+   */
+  @Test
+  public void checkpointTest(@TempDir Path dir) throws Exception {
+    // Search for at least 50ms, so that some checkpoints are due.
+    long earliest = System.nanoTime() + 50_000_000;
+    HashValidator v = (h) -> (h.length() > 1) && (h.get(0) == 9) && (h.get(1) == 9)
+        && (System.nanoTime() > earliest);
+    MiningSession session = new MiningSession(2, new Transaction("", "A", 5),
+        new Hash(new byte[] {}), 1);
+    Path file = dir.resolve("checkpoint");
+    Block b = new Miner(1).mine(session, v, file, Duration.ofMillis(1));
+    assertTrue(v.isValid(b.getHash()), "M: checkpointed block is valid");
+    assertTrue(session.getAttempts() > 0, "M: session counts attempts");
+    assertTrue(Files.exists(file), "M: checkpoint was saved");
+    assertTrue(MiningSession.load(file).getAttempts() <= session.getAttempts(),
+        "M: checkpoint is no later than the session");
+  } // checkpointTest()
+
+  /**
+   * Every worker has counted its attempts by the time the task completes.
+   */
+  @Test
+  public void attemptsTest() throws Exception {
+    Miner miner = new Miner(4);
+    for (int i = 0; i < 20; i++) {
+      MiningTask task = miner.mineAsync(i, new Transaction("", "A", i),
+          new Hash(new byte[] {}), (h) -> (h.length() > 1) && (h.get(0) == 0));
+      task.join();
+      long attempts = task.getAttempts();
+      assertEquals(task.getSession().getAttempts(), attempts, "M: the session agrees");
+      Thread.sleep(5);
+      assertEquals(attempts, task.getAttempts(), "M: no attempts counted late");
+    } // for
+  } // attemptsTest()
+
+  /**
+   * Miners need at least one thread.
+   */
+  @Test
+  public void noThreadsTest() {
+    assertThrows(IllegalArgumentException.class, () -> new Miner(0),
+        "E: zero threads");
+  } // noThreadsTest()
+} // class TestMiner
@@ -0,0 +1,83 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our SegmentedBlockStore class.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestSegmentedBlockStore {
+  /**
+   * Make a block with a given number.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the block.
+   */
+  static Block block(int num) {
+    return new Block(num, new Transaction("", "A", num), new Hash(new byte[] {}), 0);
+  } // block(int)
+
+  /**
+   * Blocks can be found by number across many segments.
+   */
+  @Test
+  public void getTest() {
+    SegmentedBlockStore store = new SegmentedBlockStore();
+    int count = SegmentedBlockStore.SEGMENT_SIZE * 20 + 3;
+    Block[] blocks = new Block[count];
+    for (int i = 0; i < count; i++) {
+      blocks[i] = block(i);
+      store.add(blocks[i]);
+    } // for
+    assertEquals(count, store.size(), "M: size");
+    for (int i = 0; i < count; i += 97) {
+      assertSame(blocks[i], store.get(i), "M: block " + i);
+    } // for
+    Iterator<Block> iter = store.iterator();
+    for (int i = 0; i < count; i++) {
+      assertSame(blocks[i], iter.next(), "M: iterating block " + i);
+    } // for
+    assertFalse(iter.hasNext(), "M: iterator ends");
+  } // getTest()
+
+  /**
+   * Removing and re-adding blocks at a segment boundary.
+   */
+  @Test
+  public void removeLastTest() {
+    SegmentedBlockStore store = new SegmentedBlockStore();
+    int count = SegmentedBlockStore.SEGMENT_SIZE + 1;
+    for (int i = 0; i < count; i++) {
+      store.add(block(i));
+    } // for
+    assertEquals(count - 1, store.removeLast().getNum(), "M: removed the last block");
+    assertEquals(count - 2, store.removeLast().getNum(), "M: removed across segments");
+    assertEquals(count - 2, store.size(), "M: size after removing");
+    Block b = block(count - 2);
+    store.add(b);
+    assertSame(b, store.get(count - 2), "M: re-added block");
+  } // removeLastTest()
+
+  /**
+   * Missing blocks cannot be found.
+   */
+  @Test
+  public void missingTest() {
+    SegmentedBlockStore store = new SegmentedBlockStore();
+    assertThrows(IndexOutOfBoundsException.class, () -> store.removeLast(), "E: empty store");
+    store.add(block(0));
+    assertThrows(IndexOutOfBoundsException.class, () -> store.get(1), "E: past the end");
+    assertThrows(IndexOutOfBoundsException.class, () -> store.get(-1), "E: negative");
+  } // missingTest()
+} // class TestSegmentedBlockStore
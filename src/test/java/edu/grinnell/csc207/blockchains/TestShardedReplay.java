@@ -0,0 +1,98 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our ShardedReplay class.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestShardedReplay {
+  /**
+   * Build a run of random transactions among a few users. The chance of
+   * a deposit controls how soon someone overspends.
+   *
+   * @param count
+   *   The number of blocks.
+   * @param seed
+   *   The seed for the transactions.
+   *
+   * @return the blocks.
+   */
+  static SegmentedBlockStore blocks(int count, long seed) {
+    Random rand = new Random(seed);
+    SegmentedBlockStore store = new SegmentedBlockStore();
+    store.add(new Block(0, new Transaction("", "", 0), new Hash(new byte[] {}), 0));
+    for (int i = 1; i < count; i++) {
+      String target = "U" + rand.nextInt(12);
+      String source = (rand.nextInt(3) == 0) ? "" : "U" + rand.nextInt(12);
+      Transaction t = new Transaction(source, target, rand.nextInt(20));
+      store.add(new Block(i, t, new Hash(new byte[] {}), 0));
+    } // for
+    return store;
+  } // blocks(int, long)
+
+  /**
+   * Replay blocks one at a time, as the sharded replay should.
+   *
+   * @param store
+   *   The blocks.
+   * @param ledger
+   *   The ledger to replay into.
+   * @param from
+   *   The first block to replay.
+   *
+   * @return the first block whose source cannot pay, or the number of
+   *   blocks.
+   */
+  static int sequential(BlockStore store, Ledger ledger, int from) {
+    for (int i = from; i < store.size(); i++) {
+      if (!ledger.apply(store.get(i).getTransaction())) {
+        ledger.undo();
+        return i;
+      } // if
+    } // for
+    return store.size();
+  } // sequential(BlockStore, Ledger, int)
+
+  /**
+   * Sharded replays agree with sequential ones, including what undo
+   * restores.
+   */
+  @Test
+  public void sameVerdictTest() {
+    for (long seed = 0; seed < 40; seed++) {
+      SegmentedBlockStore store = blocks(3000, seed);
+      for (int shards : new int[] {1, 3, 8}) {
+        Ledger expected = new Ledger();
+        Ledger actual = new Ledger();
+        int from = 0;
+        for (int round = 0; round < 4 && from < store.size(); round++) {
+          int stop = sequential(store, expected, from);
+          assertEquals(stop, new ShardedReplay(store, actual).replay(from, store.size(), shards),
+              "M: first unpaid block, seed " + seed + ", shards " + shards);
+          assertEquals(TestLedger.balances(expected), TestLedger.balances(actual),
+              "M: balances, seed " + seed);
+          // Skip the bad block, as if it had been removed, and go on.
+          if (stop < store.size()) {
+            expected.apply(store.get(stop).getTransaction());
+            actual.apply(store.get(stop).getTransaction());
+          } // if
+          from = stop + 1;
+        } // for
+        assertEquals(expected.depth, actual.depth, "M: undo log lengths match");
+        while (expected.depth > 0) {
+          expected.undo();
+          actual.undo();
+          assertEquals(TestLedger.balances(expected), TestLedger.balances(actual),
+              "M: balances after undo");
+        } // while
+      } // for
+    } // for
+  } // sameVerdictTest()
+} // class TestShardedReplay
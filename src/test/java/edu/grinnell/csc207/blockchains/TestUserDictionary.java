@@ -0,0 +1,48 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of our UserDictionary class.
+ *
+ * @author Sarah Deschamps
+ * @author Jana Vadillo
+ */
+public class TestUserDictionary {
+  /**
+   * Names get dense IDs that can be looked up both ways.
+   */
+  @Test
+  public void internTest() {
+    UserDictionary users = new UserDictionary();
+    assertEquals(UserDictionary.NONE, users.intern(""), "M: the empty name");
+    for (int i = 0; i < 5000; i++) {
+      assertEquals(i, users.intern("user" + i), "M: new name " + i);
+    } // for
+    for (int i = 0; i < 5000; i += 7) {
+      assertEquals(i, users.intern("user" + i), "M: old name " + i);
+      assertEquals(i, users.find(new String("user" + i)), "M: find name " + i);
+      assertEquals("user" + i, users.name(i), "M: name of " + i);
+    } // for
+    assertEquals(UserDictionary.NONE, users.find("nobody"), "M: unknown name");
+    assertEquals(5000, users.size, "M: number of names");
+  } // internTest()
+
+  /**
+   * Interned transactions share names and bytes.
+   */
+  @Test
+  public void transactionTest() {
+    UserDictionary users = new UserDictionary();
+    Transaction first = new Transaction(new String("A"), new String("B"), 1);
+    Transaction second = new Transaction(new String("B"), new String("A"), 2);
+    first.intern(users);
+    second.intern(users);
+    assertSame(first.getSource(), second.getTarget(), "M: shared name");
+    assertSame(first.targetBytes(), second.sourceBytes(), "M: shared bytes");
+    assertEquals(new Transaction("A", "B", 1), first, "M: same transaction");
+  } // transactionTest()
+} // class TestUserDictionary